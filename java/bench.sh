@@ -0,0 +1,9 @@
+#! /bin/bash
+# Compiles the benchmarks in bench/src against bin/ and runs the one named
+# by the first argument. Run compile.sh first.
+#
+# Example: ./bench.sh QueryCountBench flightDB 5432 user
+rm -rf bench/bin
+mkdir -p bench/bin
+javac -cp "lib/postgresql-42.1.4.jar:bin/" bench/src/*.java -d bench/bin/
+java -cp "lib/*:bin/:bench/bin/" "$@"
@@ -0,0 +1,83 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures bytes allocated per row by executeQueryAndReturnResult (every
+ * value read as a String into nested lists) against executeQueryForColumns
+ * (values read with their native getters into column arrays), using the
+ * per-thread allocation counter of the HotSpot JVM.
+ *
+ * Usage: AllocationBench <dbname> <port> <user> [iterations]
+ *
+ */
+
+public class AllocationBench {
+	static final String[] QUERIES = {
+		"SELECT * FROM Booking",
+		"SELECT * FROM Flight",
+		"SELECT pID, flightNum, score FROM Ratings",
+		"SELECT F.flightNum, F.seats, COUNT(B.bookRef) FROM Flight F LEFT JOIN Booking B ON B.flightNum = F.flightNum GROUP BY F.flightNum, F.seats",
+	};
+
+	interface Fetch {
+		int run(AirBooking esql, String query) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: AllocationBench <dbname> <port> <user> [iterations]");
+			return;
+		}
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Fetch strings = new Fetch() {
+			public int run(AirBooking e, String q) throws Exception { return e.executeQueryAndReturnResult(q).size(); }
+		};
+		Fetch columns = new Fetch() {
+			public int run(AirBooking e, String q) throws Exception { return e.executeQueryForColumns(q).getRowCount(); }
+		};
+		try{
+			System.out.println("query                                     api       bytes/row   us/row");
+			for (String query : QUERIES) {
+				measure(esql, threads, query, "strings", strings, iterations);
+				measure(esql, threads, query, "columns", columns, iterations);
+			}
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	static void measure(AirBooking esql, com.sun.management.ThreadMXBean threads, String query, String name,
+			Fetch fetch, int iterations) throws Exception {
+		// warm up past the prepare threshold so binary transfer is in effect
+		for (int i = 0; i < 20; i++) {
+			fetch.run(esql, query);
+		}
+		long tid = Thread.currentThread().getId();
+		long rows = 0;
+		long bytes = threads.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			rows += fetch.run(esql, query);
+		}
+		long elapsed = System.nanoTime() - start;
+		bytes = threads.getThreadAllocatedBytes(tid) - bytes;
+		String label = query.length() > 40 ? query.substring(0, 37) + "..." : query;
+		System.out.println(String.format("%-41s %-8s %10.1f %8.3f", label, name,
+			rows == 0 ? 0.0 : (double) bytes / rows, rows == 0 ? 0.0 : elapsed / 1e3 / rows));
+	}
+}
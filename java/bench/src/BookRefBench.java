@@ -0,0 +1,102 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures BookRefAllocator throughput from 1 to 32 threads against an
+ * in-memory block source, so no database is needed, and checks that the
+ * references handed out are unique and decode back to their numbers.
+ * getSaltString is timed as well for comparison.
+ *
+ * Usage: BookRefBench [allocations per thread]
+ *
+ */
+
+public class BookRefBench {
+	static final int[] THREADS = { 1, 2, 8, 32 };
+
+	public static void main(String[] args) throws Exception {
+		final int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+		// uniqueness and reversibility over a few million consecutive numbers
+		int checked = 3000000;
+		Set<String> seen = new HashSet<String>(checked * 2);
+		for (long n = 0; n < checked; n++) {
+			String ref = BookRefAllocator.encode(n);
+			if (!seen.add(ref) || BookRefAllocator.decode(ref) != n) {
+				throw new IllegalStateException("encode is not a bijection at " + n + " -> " + ref);
+			}
+		}
+		System.out.println("encode/decode verified for " + checked + " numbers, e.g. 0 -> "
+			+ BookRefAllocator.encode(0) + ", 1 -> " + BookRefAllocator.encode(1));
+
+		System.out.println("threads  allocator M/s  getSaltString M/s");
+		for (int threads : THREADS) {
+			final AtomicLong blocks = new AtomicLong();
+			final BookRefAllocator allocator = new BookRefAllocator(new BookRefAllocator.BlockSource() {
+				public long nextBlock() {
+					return blocks.getAndIncrement();
+				}
+			});
+			double alloc = run(threads, perThread, new Task() {
+				public int call(int n) throws Exception {
+					int h = 0;
+					for (int i = 0; i < n; i++) h += allocator.next().charAt(0);
+					return h;
+				}
+			});
+			double salt = run(threads, perThread / 4, new Task() {
+				public int call(int n) {
+					int h = 0;
+					for (int i = 0; i < n; i++) h += AirBooking.getSaltString().charAt(0);
+					return h;
+				}
+			});
+			System.out.println(String.format("%7d  %13.2f  %17.2f", threads, alloc, salt));
+		}
+	}
+
+	interface Task {
+		int call(int n) throws Exception;
+	}
+
+	/**
+	 * Runs the task on the given number of threads after a warm-up and
+	 * returns millions of calls per second across all threads.
+	 */
+	static double run(int threads, final int perThread, final Task task) throws Exception {
+		task.call(perThread / 10);
+		final int[] sink = new int[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					try{
+						sink[id] = task.call(perThread);
+					}catch (Exception e){
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread w : workers) w.start();
+		for (Thread w : workers) w.join();
+		long elapsed = System.nanoTime() - start;
+		return (double) threads * perThread / (elapsed / 1e3);
+	}
+}
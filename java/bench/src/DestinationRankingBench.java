@@ -0,0 +1,131 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Grows the Flight table to 1k, 10k and 100k routes with synthetic flights
+ * to a skewed set of destinations, and at each size times the SQL GROUP BY
+ * top-k against DestinationRanking.top(k), checking with verify() that
+ * both agree on every destination's count. Everything runs in one
+ * transaction that is rolled back at the end, so the database is left
+ * unchanged.
+ *
+ * Usage: DestinationRankingBench <dbname> <port> <user> [k] [iterations]
+ *
+ */
+
+public class DestinationRankingBench {
+	static final int[] SIZES = { 1000, 10000, 100000 };
+	static final String TOP_K =
+		"SELECT COUNT(F.destination), F.destination FROM Flight F "
+		+ "GROUP BY F.destination ORDER BY COUNT(F.destination) DESC LIMIT ?";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: DestinationRankingBench <dbname> <port> <user> [k] [iterations]");
+			return;
+		}
+		int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int iterations = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+		System.setProperty("airbooking.routes.index", "false");
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try (PooledConnection pc = esql.getPool().borrow()) {
+			Connection conn = pc.getConnection();
+			conn.setAutoCommit(false);
+			try{
+				DestinationRanking ranking = new DestinationRanking();
+				Statement st = conn.createStatement();
+				ResultSet rs = st.executeQuery("SELECT destination FROM Flight");
+				int flights = 0;
+				while (rs.next()) {
+					ranking.addRoute(rs.getString(1));
+					flights++;
+				}
+				rs.close();
+				rs = st.executeQuery("SELECT MIN(airId) FROM Airline");
+				rs.next();
+				int airId = rs.getInt(1);
+				rs.close();
+				st.close();
+
+				System.out.println("routes   destinations  sql ms/op   memory us/op  speedup  consistent");
+				PreparedStatement insert = conn.prepareStatement(
+					"INSERT INTO Flight (airId, flightNum, origin, destination, plane, seats, duration) VALUES (?, ?, ?, ?, ?, ?, ?)");
+				PreparedStatement topK = conn.prepareStatement(TOP_K);
+				Random rnd = new Random(42);
+				int synthetic = 0;
+				for (int size : SIZES) {
+					while (flights < size) {
+						// cubing skews the picks towards the first destinations
+						double u = rnd.nextDouble();
+						String destination = "Bench City " + (int) (u * u * u * 500);
+						insert.setInt(1, airId);
+						insert.setString(2, String.format("Z%07d", synthetic++));
+						insert.setString(3, "Bench Origin");
+						insert.setString(4, destination);
+						insert.setString(5, "Bench Plane");
+						insert.setInt(6, 200);
+						insert.setInt(7, 1 + rnd.nextInt(23));
+						insert.addBatch();
+						ranking.addRoute(destination);
+						flights++;
+						if (synthetic % 1000 == 0) {
+							insert.executeBatch();
+						}
+					}
+					insert.executeBatch();
+					conn.createStatement().execute("ANALYZE Flight");
+
+					long start = System.nanoTime();
+					for (int i = 0; i < iterations; i++) {
+						topK.setInt(1, k);
+						ResultSet r = topK.executeQuery();
+						while (r.next()) {
+							r.getString(2);
+						}
+						r.close();
+					}
+					double sqlMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+					int memoryIterations = iterations * 100;
+					start = System.nanoTime();
+					int sink = 0;
+					for (int i = 0; i < memoryIterations; i++) {
+						sink += ranking.top(k).size();
+					}
+					double memoryUs = (System.nanoTime() - start) / 1e3 / memoryIterations;
+					if (sink < 0) {
+						System.out.println(sink);
+					}
+
+					System.out.println(String.format("%6d   %12d  %9.3f   %12.3f  %7.0fx  %s",
+						flights, ranking.size(), sqlMs, memoryUs, sqlMs * 1000 / memoryUs,
+						ranking.verify(pc).isEmpty() ? "yes" : "NO"));
+				}
+				insert.close();
+				topK.close();
+			}finally{
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+		}finally{
+			esql.cleanup();
+		}
+	}
+}
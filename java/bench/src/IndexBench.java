@@ -0,0 +1,289 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Times each menu operation without and with the indexes a migration
+ * creates, with the data grown to 10 and 100 times its loaded size.
+ *
+ * The data is grown by copying every flight, passenger, booking and rating
+ * onto new cities, flight numbers and passports, so the tables get larger
+ * while each search still returns as many rows as before, the way more
+ * airlines would grow the database. At each scale the migration's indexes
+ * are dropped, every operation is timed, the migration is run and every
+ * operation is timed again. Operations run through Operations with the
+ * in-memory route index turned off, so all of them reach the database.
+ * Bookings are made in 2099 and deleted after each pass.
+ *
+ * Growing to 100x takes minutes and the copies are deleted at the end
+ * unless --keep is given; run it against a throwaway database such as the
+ * one jmh/db.sh starts. Indexes the migration creates are dropped again
+ * at the end if they did not exist before.
+ *
+ * Usage: IndexBench <dbname> <port> <user> [--scales 10,100] [--iterations 200]
+ *        [--migration ../sql/migrations/001_workload_indexes.sql] [--keep]
+ *
+ */
+
+public class IndexBench {
+	static final Pattern CREATE_INDEX = Pattern.compile(
+		"CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)", Pattern.CASE_INSENSITIVE);
+	static final String[] OPS = { "routes", "by-duration", "popular", "top-rated", "seats", "review", "book" };
+	static final LocalDate BOOKING_YEAR = LocalDate.of(2099, 1, 1);
+
+	//flights loaded from data/ numbered in a fixed order; copy k of flight n is Zk.n
+	static final String ORIGINAL_FLIGHTS =
+		"(SELECT flightNum, row_number() OVER (ORDER BY flightNum) AS n FROM Flight WHERE flightNum NOT LIKE 'Z%.%') F";
+	//copy k of a passenger has the passport kkk followed by the first 7 characters of the original
+	static final String COPIED_PASSENGER =
+		"JOIN Passenger P ON P.pID = X.pID AND P.passNum ~ '^[A-Z]' "
+		+ "CROSS JOIN generate_series(?, ?) k "
+		+ "JOIN Passenger C ON C.passNum = lpad(k::text, 3, '0') || left(P.passNum, 7) ";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: IndexBench <dbname> <port> <user> [--scales 10,100] [--iterations 200]"
+				+ " [--migration ../sql/migrations/001_workload_indexes.sql] [--keep]");
+			return;
+		}
+		String scales = "10,100";
+		int iterations = 200;
+		File migration = new File("../sql/migrations/001_workload_indexes.sql");
+		boolean keep = false;
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("--scales")) scales = args[++i];
+			else if (args[i].equals("--iterations")) iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--migration")) migration = new File(args[++i]);
+			else if (args[i].equals("--keep")) keep = true;
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		String script = new String(Files.readAllBytes(migration.toPath()), StandardCharsets.UTF_8);
+		List<String> indexes = new ArrayList<String>();
+		Matcher m = CREATE_INDEX.matcher(script);
+		while (m.find()) {
+			indexes.add(m.group(1).toLowerCase());
+		}
+		if (indexes.isEmpty()) {
+			throw new IllegalArgumentException(migration + " creates no index");
+		}
+
+		System.setProperty("airbooking.routes.index", "false");
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		int lastPid = Integer.parseInt(esql.executeQueryForResult("SELECT COALESCE(MAX(pID), 0) FROM Passenger").get(0, 0));
+		List<String> existing = new ArrayList<String>();
+		for (String index : indexes) {
+			if (esql.executeQuery("SELECT indexname FROM pg_indexes WHERE indexname = ?", index) != 0) {
+				existing.add(index);
+			}
+		}
+		try{
+			System.out.println("Indexes of " + migration.getName() + ": " + indexes);
+			System.out.println("scale  operation      without p50 ms   mean ms   with p50 ms   mean ms   speedup");
+			int current = 1;
+			for (String s : scales.split(",")) {
+				int scale = Integer.parseInt(s.trim());
+				if (scale > current) {
+					grow(esql, current, scale);
+					current = scale;
+				}
+				Keys keys = new Keys(esql);
+				for (String index : indexes) {
+					execute(esql, "DROP INDEX IF EXISTS " + index);
+				}
+				execute(esql, "ANALYZE");
+				Map<String, LatencyHistogram> without = measure(esql, keys, iterations);
+				execute(esql, script);
+				execute(esql, "ANALYZE");
+				Map<String, LatencyHistogram> with = measure(esql, keys, iterations);
+				for (String op : OPS) {
+					LatencyHistogram a = without.get(op);
+					LatencyHistogram b = with.get(op);
+					System.out.println(String.format("%4dx  %-12s %14.3f %9.3f %13.3f %9.3f %8.1fx",
+						scale, op, a.getValueAtPercentile(50) / 1e6, a.getMean() / 1e6,
+						b.getValueAtPercentile(50) / 1e6, b.getMean() / 1e6, a.getMean() / b.getMean()));
+				}
+			}
+		}finally{
+			if (!keep) {
+				shrink(esql, lastPid);
+				for (String index : indexes) {
+					if (!existing.contains(index)) {
+						execute(esql, "DROP INDEX IF EXISTS " + index);
+					}
+				}
+			}
+			esql.cleanup();
+		}
+	}
+
+	/**
+	 * Random keys that exist at the current scale.
+	 */
+	static final class Keys {
+		final List<List<String>> routes;
+		final List<List<String>> departures;
+		final List<List<String>> reviews;
+		final List<List<String>> flights;
+		final List<List<String>> passengers;
+
+		Keys(AirBooking esql) throws SQLException {
+			this.routes = esql.executeQueryAndReturnResult(
+				"SELECT trim(origin), trim(destination) FROM Flight ORDER BY random() LIMIT 1000");
+			this.departures = esql.executeQueryAndReturnResult(
+				"SELECT flightNum, departure FROM Booking ORDER BY random() LIMIT 1000");
+			// passengers who booked and already reviewed a flight, so review()
+			// runs both checks and is then refused without writing
+			this.reviews = esql.executeQueryAndReturnResult(
+				"SELECT R.pID, R.flightNum FROM Ratings R WHERE EXISTS "
+				+ "(SELECT 1 FROM Booking B WHERE B.pID = R.pID AND B.flightNum = R.flightNum) "
+				+ "ORDER BY random() LIMIT 1000");
+			this.flights = esql.executeQueryAndReturnResult("SELECT flightNum FROM Flight ORDER BY random() LIMIT 1000");
+			this.passengers = esql.executeQueryAndReturnResult("SELECT pID FROM Passenger ORDER BY random() LIMIT 1000");
+			System.out.println(String.format("       %s flights, %s passengers, %s bookings, %s ratings",
+				count(esql, "Flight"), count(esql, "Passenger"), count(esql, "Booking"), count(esql, "Ratings")));
+		}
+	}
+
+	static Map<String, LatencyHistogram> measure(AirBooking esql, Keys keys, int iterations) throws Exception {
+		Operations ops = esql.getOperations();
+		Random rnd = new Random(42);
+		Map<String, LatencyHistogram> result = new LinkedHashMap<String, LatencyHistogram>();
+		for (String op : OPS) {
+			LatencyHistogram h = new LatencyHistogram();
+			for (int i = -iterations / 10; i < iterations; i++) {
+				long start = System.nanoTime();
+				run(ops, op, keys, rnd);
+				if (i >= 0) {
+					h.record(System.nanoTime() - start);
+				}
+			}
+			result.put(op, h);
+		}
+		esql.executeUpdate("DELETE FROM Booking WHERE departure >= ?", Date.valueOf(BOOKING_YEAR));
+		esql.executeUpdate("DELETE FROM SeatInventory WHERE departure >= ? AND booked = 0", Date.valueOf(BOOKING_YEAR));
+		return result;
+	}
+
+	static void run(Operations ops, String op, Keys keys, Random rnd) throws Exception {
+		if (op.equals("routes")) {
+			List<String> r = pick(keys.routes, rnd);
+			ops.routes(r.get(0), r.get(1));
+		}
+		else if (op.equals("by-duration")) {
+			List<String> r = pick(keys.routes, rnd);
+			ops.flightsByDuration(r.get(0), r.get(1), 10);
+		}
+		else if (op.equals("popular")) {
+			ops.popularDestinations(10);
+		}
+		else if (op.equals("top-rated")) {
+			ops.highestRatedRoutes(10);
+		}
+		else if (op.equals("seats")) {
+			List<String> d = pick(keys.departures, rnd);
+			ops.availableSeats(d.get(0).trim(), Date.valueOf(d.get(1)));
+		}
+		else if (op.equals("review")) {
+			List<String> r = pick(keys.reviews, rnd);
+			try{
+				ops.review(Integer.parseInt(r.get(0)), r.get(1).trim(), 3, "");
+				throw new IllegalStateException("review of " + r + " was accepted");
+			}catch (Operations.Rejected e){
+				// expected: the passenger already reviewed the flight
+			}//end try
+		}
+		else {
+			try{
+				ops.book(pick(keys.flights, rnd).get(0).trim(), Integer.parseInt(pick(keys.passengers, rnd).get(0)),
+					Date.valueOf(BOOKING_YEAR.plusDays(rnd.nextInt(365))));
+			}catch (Operations.Rejected e){
+				// a full flight or a repeated booking costs the same statements
+			}//end try
+		}
+	}
+
+	static List<String> pick(List<List<String>> rows, Random rnd) {
+		return rows.get(rnd.nextInt(rows.size()));
+	}
+
+	/**
+	 * Copies the loaded data until there are scale copies of it.
+	 */
+	static void grow(AirBooking esql, int from, int scale) throws SQLException {
+		long start = System.nanoTime();
+		esql.executeUpdate("INSERT INTO Flight (airId, flightNum, origin, destination, plane, seats, duration) "
+			+ "SELECT G.airId, 'Z' || k || '.' || F.n, left(trim(G.origin), 12) || '#' || k, "
+			+ "left(trim(G.destination), 12) || '#' || k, G.plane, G.seats, G.duration "
+			+ "FROM Flight G JOIN " + ORIGINAL_FLIGHTS + " ON F.flightNum = G.flightNum "
+			+ "CROSS JOIN generate_series(?, ?) k", from, scale - 1);
+		// pID is assigned by the insertPassenger trigger
+		esql.executeUpdate("INSERT INTO Passenger (pID, passNum, fullName, bdate, country) "
+			+ "SELECT 0, lpad(k::text, 3, '0') || left(P.passNum, 7), P.fullName, P.bdate, P.country "
+			+ "FROM Passenger P CROSS JOIN generate_series(?, ?) k WHERE P.passNum ~ '^[A-Z]' "
+			+ "ON CONFLICT DO NOTHING", from, scale - 1);
+		esql.executeUpdate("INSERT INTO Booking (bookRef, departure, flightNum, pID) "
+			+ "SELECT lpad(k::text, 3, '0') || right(X.bookRef, 7), X.departure, 'Z' || k || '.' || F.n, C.pID "
+			+ "FROM Booking X JOIN " + ORIGINAL_FLIGHTS + " ON F.flightNum = X.flightNum "
+			+ COPIED_PASSENGER + "ON CONFLICT DO NOTHING", from, scale - 1);
+		esql.executeUpdate("INSERT INTO Ratings (rID, pID, flightNum, score, comment) "
+			+ "SELECT 0, C.pID, 'Z' || k || '.' || F.n, X.score, X.comment "
+			+ "FROM Ratings X JOIN " + ORIGINAL_FLIGHTS + " ON F.flightNum = X.flightNum "
+			+ COPIED_PASSENGER, from, scale - 1);
+		System.out.println(String.format("       grew to %dx in %.1f s", scale, (System.nanoTime() - start) / 1e9));
+	}
+
+	/**
+	 * Deletes every copy made by grow().
+	 */
+	static void shrink(AirBooking esql, int lastPid) throws SQLException {
+		esql.executeUpdate("DELETE FROM Ratings WHERE flightNum LIKE 'Z%.%'");
+		esql.executeUpdate("DELETE FROM Booking WHERE flightNum LIKE 'Z%.%' OR departure >= ?", Date.valueOf(BOOKING_YEAR));
+		esql.executeUpdate("DELETE FROM SeatInventory WHERE flightNum LIKE 'Z%.%' OR (departure >= ? AND booked = 0)",
+			Date.valueOf(BOOKING_YEAR));
+		esql.executeUpdate("DELETE FROM Flight WHERE flightNum LIKE 'Z%.%'");
+		esql.executeUpdate("DELETE FROM Passenger WHERE pID > ? AND passNum ~ '^[0-9]{3}'", lastPid);
+	}
+
+	static String count(AirBooking esql, String table) throws SQLException {
+		return esql.executeQueryForResult("SELECT COUNT(*) FROM " + table).get(0, 0);
+	}
+
+	/**
+	 * Runs DDL or a whole script on a pooled connection.
+	 */
+	static void execute(AirBooking esql, String sql) throws SQLException {
+		try (PooledConnection pc = esql.getPool().borrow()) {
+			Statement st = pc.getConnection().createStatement();
+			try{
+				st.execute(sql);
+			}finally{
+				st.close();
+			}
+		}
+	}
+}
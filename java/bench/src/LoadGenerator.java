@@ -0,0 +1,291 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a mix of booking, review, route search and seat availability
+ * requests from many concurrent clients through Operations, with keys drawn
+ * from data/*.csv, and reports throughput and p50/p95/p99/p99.9 latency per
+ * operation.
+ *
+ * By default every client sends its next request as soon as the previous
+ * one returns (closed loop). With --rate the clients together start
+ * requests on a fixed schedule instead (open loop), and latency is measured
+ * from the time a request was due rather than when it was actually sent.
+ * A stalled server then shows up as latency for every request queued
+ * behind the stall, instead of silently lowering the request rate
+ * (coordinated omission).
+ *
+ * Bookings are made on dates in 2099 and are deleted at the end together
+ * with the reviews written, unless --keep is given.
+ *
+ * Usage: LoadGenerator <dbname> <port> <user> [--clients 100] [--seconds 30]
+ *        [--warmup 5] [--rate <requests/s>] [--mix book=20,review=10,search=50,availability=20]
+ *        [--data ../data] [--keep]
+ *
+ */
+
+public class LoadGenerator {
+	static final String[] OPS = { "book", "review", "search", "availability" };
+	static final LocalDate BOOKING_YEAR = LocalDate.of(2099, 1, 1);
+
+	/**
+	 * Results of one operation type.
+	 */
+	static final class Stats {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong ok = new AtomicLong();
+		final AtomicLong rejected = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+	}
+
+	//keys read from the data files
+	static final List<String[]> flights = new ArrayList<String[]>();
+	static final List<Integer> passengers = new ArrayList<Integer>();
+	static final List<String[]> bookings = new ArrayList<String[]>();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: LoadGenerator <dbname> <port> <user> [--clients 100] [--seconds 30] [--warmup 5]"
+				+ " [--rate <requests/s>] [--mix book=20,review=10,search=50,availability=20] [--data ../data] [--keep]");
+			return;
+		}
+		int clients = 100;
+		int seconds = 30;
+		int warmup = 5;
+		double rate = 0;
+		String mix = "book=20,review=10,search=50,availability=20";
+		String data = "../data";
+		boolean keep = false;
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("--clients")) clients = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--seconds")) seconds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--warmup")) warmup = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--rate")) rate = Double.parseDouble(args[++i]);
+			else if (args[i].equals("--mix")) mix = args[++i];
+			else if (args[i].equals("--data")) data = args[++i];
+			else if (args[i].equals("--keep")) keep = true;
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		final int[] weights = parseMix(mix);
+		load(new File(data));
+		if (System.getProperty("airbooking.pool.max") == null) {
+			System.setProperty("airbooking.pool.max", Integer.toString(Math.min(clients, 64)));
+		}
+
+		Class.forName("org.postgresql.Driver");
+		final AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try{
+			String maxRid = esql.executeQueryForResult("SELECT COALESCE(MAX(rID), -1) FROM Ratings").get(0, 0);
+			final Stats[] stats = new Stats[OPS.length];
+			for (int i = 0; i < stats.length; i++) {
+				stats[i] = new Stats();
+			}
+			System.out.println(String.format("%d clients, %s, %ds warmup + %ds measured, mix %s",
+				clients, rate > 0 ? String.format("open loop at %.0f requests/s", rate) : "closed loop", warmup, seconds, mix));
+
+			final long start = System.nanoTime() + 100000000L;
+			final long measureFrom = start + warmup * 1000000000L;
+			final long end = measureFrom + seconds * 1000000000L;
+			// each client's share of the schedule, 0 in closed loop
+			final long interval = rate > 0 ? (long) (clients * 1e9 / rate) : 0;
+			final CountDownLatch done = new CountDownLatch(clients);
+			for (int c = 0; c < clients; c++) {
+				final long offset = interval * c / clients;
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						try{
+							long due = start + offset;
+							LockSupport.parkNanos(due - System.nanoTime());
+							while (true) {
+								long now = System.nanoTime();
+								if (interval > 0) {
+									if (due >= end) break;
+									if (due > now) {
+										LockSupport.parkNanos(due - now);
+										continue;
+									}
+								}
+								else {
+									if (now >= end) break;
+									due = now;
+								}
+								int op = pick(weights);
+								int outcome = execute(esql.getOperations(), op);
+								long latency = System.nanoTime() - due;
+								if (due >= measureFrom) {
+									Stats s = stats[op];
+									s.latency.record(latency);
+									(outcome == 0 ? s.ok : outcome == 1 ? s.rejected : s.errors).incrementAndGet();
+								}
+								due += interval;
+							}
+						}finally{
+							done.countDown();
+						}
+					}
+				}, "load-client-" + c);
+				t.setDaemon(true);
+				t.start();
+			}
+			done.await();
+
+			System.out.println("operation     requests        ok  rejected  errors   req/s      p50 ms    p95 ms    p99 ms   p999 ms    max ms");
+			long total = 0;
+			LatencyHistogram all = new LatencyHistogram();
+			for (int i = 0; i < OPS.length; i++) {
+				Stats s = stats[i];
+				LatencyHistogram h = s.latency;
+				total += h.getCount();
+				all.add(h);
+				if (h.getCount() > 0) {
+					System.out.println(row(OPS[i], h, s.ok.get(), s.rejected.get(), s.errors.get(), seconds));
+				}
+			}
+			System.out.println(row("all", all, -1, -1, -1, seconds));
+			System.out.println(String.format("throughput %.1f requests/s", total / (double) seconds));
+			System.out.println(esql.getPool().stats());
+
+			if (!keep) {
+				esql.executeUpdate("DELETE FROM Booking WHERE departure >= ?", Date.valueOf(BOOKING_YEAR));
+				esql.executeUpdate("DELETE FROM SeatInventory WHERE departure >= ? AND booked = 0", Date.valueOf(BOOKING_YEAR));
+				esql.executeUpdate("DELETE FROM Ratings WHERE rID > ?", Integer.parseInt(maxRid));
+			}
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	static String row(String name, LatencyHistogram h, long ok, long rejected, long errors, int seconds) {
+		return String.format("%-12s %9d %9s %9s %7s %7.1f %9.3f %9.3f %9.3f %9.3f %9.3f",
+			name, h.getCount(), ok < 0 ? "" : Long.toString(ok), rejected < 0 ? "" : Long.toString(rejected),
+			errors < 0 ? "" : Long.toString(errors), h.getCount() / (double) seconds,
+			h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(95) / 1e6, h.getValueAtPercentile(99) / 1e6,
+			h.getValueAtPercentile(99.9) / 1e6, h.getMax() / 1e6);
+	}
+
+	/**
+	 * Runs one request of the given type with random keys.
+	 *
+	 * @return 0 when it succeeded, 1 when it was refused, 2 on an error
+	 */
+	static int execute(Operations ops, int op) {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		try{
+			if (op == 0) {
+				String[] f = flights.get(rnd.nextInt(flights.size()));
+				int pID = passengers.get(rnd.nextInt(passengers.size()));
+				ops.book(f[0], pID, Date.valueOf(BOOKING_YEAR.plusDays(rnd.nextInt(365))));
+			}
+			else if (op == 1) {
+				String[] b = bookings.get(rnd.nextInt(bookings.size()));
+				ops.review(Integer.parseInt(b[2]), b[0], rnd.nextInt(6), "load test");
+			}
+			else if (op == 2) {
+				String[] f = flights.get(rnd.nextInt(flights.size()));
+				ops.routes(f[1], f[2]);
+			}
+			else {
+				String[] b = bookings.get(rnd.nextInt(bookings.size()));
+				ops.availableSeats(b[0], Date.valueOf(b[1]));
+			}
+			return 0;
+		}catch (Operations.Rejected e){
+			return 1;
+		}catch (Exception e){
+			return 2;
+		}//end try
+	}
+
+	static int pick(int[] cumulative) {
+		int r = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+		for (int i = 0; i < cumulative.length; i++) {
+			if (r < cumulative[i]) {
+				return i;
+			}
+		}
+		return cumulative.length - 1;
+	}
+
+	/**
+	 * Parses name=weight pairs into cumulative weights in OPS order.
+	 */
+	static int[] parseMix(String mix) {
+		int[] w = new int[OPS.length];
+		for (String part : mix.split(",")) {
+			String[] kv = part.split("=");
+			int i = 0;
+			while (i < OPS.length && !OPS[i].equals(kv[0].trim())) {
+				i++;
+			}
+			if (i == OPS.length || kv.length != 2) {
+				throw new IllegalArgumentException("Bad mix entry " + part + ", expected one of book, review, search, availability");
+			}
+			w[i] = Integer.parseInt(kv[1].trim());
+		}
+		for (int i = 1; i < w.length; i++) {
+			w[i] += w[i - 1];
+		}
+		if (w[w.length - 1] <= 0) {
+			throw new IllegalArgumentException("The mix needs a positive weight");
+		}
+		return w;
+	}
+
+	static void load(File dir) throws IOException {
+		for (String[] f : read(new File(dir, "flights.csv"))) {
+			// airId, flightNum, origin, destination, plane, seats, duration
+			flights.add(new String[] { f[1], f[2], f[3] });
+		}
+		for (String[] p : read(new File(dir, "passenger.csv"))) {
+			passengers.add(Integer.parseInt(p[0]));
+		}
+		for (String[] b : read(new File(dir, "bookings.csv"))) {
+			// bookRef, departure, flightNum, pID kept as flightNum, yyyy-mm-dd, pID
+			LocalDate d = Csv.parseUsDate(b[1]);
+			if (d != null) {
+				bookings.add(new String[] { b[2], d.toString(), b[3] });
+			}
+		}
+		if (flights.isEmpty() || passengers.isEmpty() || bookings.isEmpty()) {
+			throw new IOException("No keys found under " + dir + "; pass --data <path to data/>");
+		}
+	}
+
+	static List<String[]> read(File file) throws IOException {
+		List<String[]> rows = new ArrayList<String[]>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.trim().length() > 0) {
+					rows.add(line.split(",", -1));
+				}
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares Booking as one table against Booking partitioned by departure
+ * month (sql/migrations/003_partition_booking.sql) at tens of millions of
+ * bookings. Two copies, partbench.heap and partbench.part, are built in a
+ * scratch schema with the same synthetic bookings and the same keys and
+ * indexes, and for each it measures:
+ *   - seat counts: COUNT(*) of one flight and departure date, the lookup
+ *     reconcile-seats and the old availability query make
+ *   - confirmations: one booking by bookRef and departure, as BookFlight
+ *     reads it back
+ *   - insert throughput of new bookings for the latest month, in JDBC
+ *     batches of 1000
+ *   - retiring the oldest month: DELETE against DETACH PARTITION
+ * Only the table layout differs; the triggers and foreign keys of Booking
+ * are left out of both copies. The schema is dropped at the end unless
+ * --keep is given. Loading 20 million bookings twice takes several minutes
+ * and a few GB of disk.
+ *
+ * Usage: PartitionBench <dbname> <port> <user> [--bookings 20000000] [--months 24]
+ *        [--lookups 2000] [--inserts 100000] [--keep]
+ *
+ */
+
+public class PartitionBench {
+	static final String[] TABLES = { "heap", "part" };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: PartitionBench <dbname> <port> <user> [--bookings 20000000] [--months 24]"
+				+ " [--lookups 2000] [--inserts 100000] [--keep]");
+			return;
+		}
+		long bookings = 20000000L;
+		int months = 24;
+		int lookups = 2000;
+		int inserts = 100000;
+		boolean keep = false;
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("--bookings")) bookings = Long.parseLong(args[++i]);
+			else if (args[i].equals("--months")) months = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--lookups")) lookups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--inserts")) inserts = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--keep")) keep = true;
+			else throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		LocalDate first = LocalDate.now().withDayOfMonth(1).minusMonths(months - 1);
+		LocalDate end = first.plusMonths(months);
+		int days = (int) (end.toEpochDay() - first.toEpochDay());
+
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try (PooledConnection pc = esql.getPool().borrow()) {
+			Connection conn = pc.getConnection();
+			Statement st = conn.createStatement();
+			try{
+				List<String> flights = new ArrayList<String>();
+				ResultSet rs = st.executeQuery("SELECT flightNum FROM Flight ORDER BY flightNum");
+				while (rs.next()) {
+					flights.add(rs.getString(1));
+				}
+				rs.close();
+
+				st.execute("DROP SCHEMA IF EXISTS partbench CASCADE");
+				st.execute("CREATE SCHEMA partbench");
+				st.execute("CREATE TABLE partbench.heap (bookRef CHAR(10) NOT NULL, departure DATE NOT NULL, "
+					+ "flightNum CHAR(8) NOT NULL, pID INTEGER NOT NULL)");
+				st.execute("CREATE TABLE partbench.part (bookRef CHAR(10) NOT NULL, departure DATE NOT NULL, "
+					+ "flightNum CHAR(8) NOT NULL, pID INTEGER NOT NULL) PARTITION BY RANGE (departure)");
+				for (LocalDate m = first; m.isBefore(end); m = m.plusMonths(1)) {
+					st.execute(String.format("CREATE TABLE partbench.%s PARTITION OF partbench.part FOR VALUES FROM ('%s') TO ('%s')",
+						partition(m), m, m.plusMonths(1)));
+				}
+				st.execute("CREATE TABLE partbench.part_default PARTITION OF partbench.part DEFAULT");
+
+				System.out.println(String.format("%,d bookings over %d months (%s to %s) on %d flights",
+					bookings, months, first, end.minusDays(1), flights.size()));
+				for (String t : TABLES) {
+					long start = System.nanoTime();
+					// booking i departs on day i % days, so the heap interleaves
+					// every date the way bookings arrive; (day, flight, pID) is unique
+					PreparedStatement load = conn.prepareStatement("INSERT INTO partbench." + t + " "
+						+ "SELECT 'P' || lpad(i::text, 9, '0'), ?::date + (i % ?)::int, "
+						+ "F.a[1 + (i / ?) % array_length(F.a, 1)], (i / ? / array_length(F.a, 1))::int "
+						+ "FROM (SELECT array_agg(flightNum ORDER BY flightNum) AS a FROM Flight) F, "
+						+ "generate_series(0::bigint, ? - 1) i");
+					load.setDate(1, Date.valueOf(first));
+					load.setInt(2, days);
+					load.setInt(3, days);
+					load.setInt(4, days);
+					load.setLong(5, bookings);
+					load.executeUpdate();
+					load.close();
+					double loaded = (System.nanoTime() - start) / 1e9;
+					start = System.nanoTime();
+					String key = t.equals("heap") ? "bookRef" : "bookRef, departure";
+					st.execute("ALTER TABLE partbench." + t + " ADD PRIMARY KEY (" + key + ")");
+					st.execute("ALTER TABLE partbench." + t + " ADD UNIQUE (departure, flightNum, pID)");
+					st.execute("CREATE INDEX ON partbench." + t + " (pID, flightNum)");
+					st.execute("CREATE INDEX ON partbench." + t + " (flightNum, departure)");
+					st.execute("ANALYZE partbench." + t);
+					System.out.println(String.format("%s: loaded in %.1f s, indexed in %.1f s, %s total",
+						t, loaded, (System.nanoTime() - start) / 1e9, size(st, "partbench." + t)));
+				}
+				System.out.println("latest month's partition: " + size(st, "partbench." + partition(end.minusMonths(1))));
+
+				System.out.println();
+				System.out.println("table  seat count p50 ms   mean ms   confirmation p50 ms   mean ms   inserts/s   retire oldest month ms");
+				for (String t : TABLES) {
+					Random rnd = new Random(42);
+					LatencyHistogram count = new LatencyHistogram();
+					PreparedStatement ps = conn.prepareStatement(
+						"SELECT COUNT(*) FROM partbench." + t + " WHERE flightNum = ? AND departure = ?");
+					for (int i = -lookups / 10; i < lookups; i++) {
+						ps.setString(1, flights.get(rnd.nextInt(flights.size())));
+						ps.setDate(2, Date.valueOf(first.plusDays(rnd.nextInt(days))));
+						long start = System.nanoTime();
+						rs = ps.executeQuery();
+						rs.next();
+						rs.close();
+						if (i >= 0) {
+							count.record(System.nanoTime() - start);
+						}
+					}
+					ps.close();
+
+					LatencyHistogram confirm = new LatencyHistogram();
+					ps = conn.prepareStatement("SELECT * FROM partbench." + t + " WHERE bookRef = ? AND departure = ?");
+					for (int i = -lookups / 10; i < lookups; i++) {
+						long b = (long) (rnd.nextDouble() * bookings);
+						ps.setString(1, String.format("P%09d", b));
+						ps.setDate(2, Date.valueOf(first.plusDays(b % days)));
+						long start = System.nanoTime();
+						rs = ps.executeQuery();
+						if (!rs.next()) {
+							throw new IllegalStateException("booking " + b + " not found");
+						}
+						rs.close();
+						if (i >= 0) {
+							confirm.record(System.nanoTime() - start);
+						}
+					}
+					ps.close();
+
+					double rate = insert(conn, t, inserts, flights, end.minusMonths(1), rnd);
+
+					long start = System.nanoTime();
+					if (t.equals("heap")) {
+						PreparedStatement del = conn.prepareStatement("DELETE FROM partbench.heap WHERE departure < ?");
+						del.setDate(1, Date.valueOf(first.plusMonths(1)));
+						del.executeUpdate();
+						del.close();
+					}
+					else {
+						st.execute("ALTER TABLE partbench.part DETACH PARTITION partbench." + partition(first));
+						st.execute("DROP TABLE partbench." + partition(first));
+					}
+					double retire = (System.nanoTime() - start) / 1e6;
+
+					System.out.println(String.format("%-5s %19.3f %9.3f %21.3f %9.3f %11.0f %24.1f", t,
+						count.getValueAtPercentile(50) / 1e6, count.getMean() / 1e6,
+						confirm.getValueAtPercentile(50) / 1e6, confirm.getMean() / 1e6, rate, retire));
+				}
+			}finally{
+				if (!keep) {
+					st.execute("DROP SCHEMA IF EXISTS partbench CASCADE");
+				}
+				st.close();
+			}
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	/**
+	 * Inserts new bookings for the given month in batches of 1000.
+	 *
+	 * @return bookings inserted per second
+	 */
+	static double insert(Connection conn, String table, int count, List<String> flights, LocalDate month, Random rnd)
+			throws SQLException {
+		int days = month.lengthOfMonth();
+		PreparedStatement ps = conn.prepareStatement(
+			"INSERT INTO partbench." + table + " (bookRef, departure, flightNum, pID) VALUES (?, ?, ?, ?)");
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			ps.setString(1, String.format("Q%09d", i));
+			ps.setDate(2, Date.valueOf(month.plusDays(rnd.nextInt(days))));
+			ps.setString(3, flights.get(rnd.nextInt(flights.size())));
+			// pIDs above every loaded one keep (departure, flightNum, pID) unique
+			ps.setInt(4, 1000000 + i);
+			ps.addBatch();
+			if ((i + 1) % 1000 == 0 || i == count - 1) {
+				ps.executeBatch();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		ps.close();
+		return count / seconds;
+	}
+
+	static String partition(LocalDate month) {
+		return String.format("part_%d_%02d", month.getYear(), month.getMonthValue());
+	}
+
+	static String size(Statement st, String table) throws SQLException {
+		ResultSet rs = st.executeQuery("SELECT pg_size_pretty(COALESCE(SUM(pg_total_relation_size(relid)), 0)) "
+			+ "FROM pg_partition_tree('" + table + "') WHERE isleaf");
+		rs.next();
+		String size = rs.getString(1);
+		rs.close();
+		return size;
+	}
+}
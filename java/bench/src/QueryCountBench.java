@@ -0,0 +1,113 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Counts the statements each read-only menu operation sends to the DBMS and
+ * times it, then compares the single-execution result API against the old
+ * count-then-fetch pattern that ran every list query twice.
+ *
+ * Usage: QueryCountBench <dbname> <port> <user> [iterations]
+ *
+ */
+
+public class QueryCountBench {
+	interface Operation {
+		void run(AirBooking esql) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: QueryCountBench <dbname> <port> <user> [iterations]");
+			return;
+		}
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try{
+			System.out.println("operation                          statements/op   avg ms/op");
+			measure(esql, "4 flights origin->destination", "Beijing\nSan Francisco\n", iterations, new Operation() {
+				public void run(AirBooking e) throws Exception { AirBooking.ListAvailableFlightsBetweenOriginAndDestination(e); }
+			});
+			measure(esql, "5 most popular destinations", "10\n", iterations, new Operation() {
+				public void run(AirBooking e) { AirBooking.ListMostPopularDestinations(e); }
+			});
+			measure(esql, "6 highest rated routes", "10\n", iterations, new Operation() {
+				public void run(AirBooking e) { AirBooking.ListHighestRatedRoutes(e); }
+			});
+			measure(esql, "7 flights by duration", "Beijing\nSan Francisco\n10\n", iterations, new Operation() {
+				public void run(AirBooking e) { AirBooking.ListFlightFromOriginToDestinationInOrderOfDuration(e); }
+			});
+			measure(esql, "8 available seats", "LH525\n7\n21\n2018\n", iterations, new Operation() {
+				public void run(AirBooking e) { AirBooking.FindNumberOfAvailableSeatsForFlight(e); }
+			});
+
+			// the same route query, fetched the old way and the new way
+			String query = "SELECT A.name, F.flightNum, F.origin, F.destination, F.plane, F.duration "
+				+ "FROM Airline A, Flight F WHERE A.airId = F.airID AND F.origin = ? AND F.destination = ? "
+				+ "ORDER BY F.duration DESC";
+			long before = esql.getStatementCount();
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				if (esql.executeQuery(query, "Beijing", "San Francisco") != 0) {
+					List<List<String>> rows = esql.executeQueryAndReturnResult(query, "Beijing", "San Francisco");
+					rows.size();
+				}
+			}
+			report("count then fetch (old)", esql.getStatementCount() - before, System.nanoTime() - start, iterations);
+			before = esql.getStatementCount();
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				esql.executeQueryForResult(query, "Beijing", "San Francisco").getRowCount();
+			}
+			report("single execution (new)", esql.getStatementCount() - before, System.nanoTime() - start, iterations);
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	/**
+	 * Runs a menu operation with scripted console input, discarding what it
+	 * prints, and reports the statements and time it took per call.
+	 */
+	static void measure(AirBooking esql, String name, String input, int iterations, Operation op) throws Exception {
+		InputStream stdin = System.in;
+		PrintStream stdout = System.out;
+		long before = esql.getStatementCount();
+		long start = System.nanoTime();
+		try{
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) { }
+				public void write(byte[] b, int off, int len) { }
+			}));
+			for (int i = 0; i < iterations; i++) {
+				System.setIn(new ByteArrayInputStream(input.getBytes("UTF-8")));
+				op.run(esql);
+			}
+		}finally{
+			System.setIn(stdin);
+			System.setOut(stdout);
+		}
+		report(name, esql.getStatementCount() - before, System.nanoTime() - start, iterations);
+	}
+
+	static void report(String name, long statements, long nanos, int iterations) {
+		System.out.println(String.format("%-34s %13.2f %11.3f", name,
+			(double) statements / iterations, nanos / 1e6 / iterations));
+	}
+}
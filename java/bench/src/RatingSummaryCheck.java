@@ -0,0 +1,121 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Checks that the summarizeRating trigger keeps RatingSummary equal to a
+ * GROUP BY over Ratings when ratings are added, rescored, moved to another
+ * flight and deleted, including the last rating of a flight. Two scratch
+ * flights are used, and everything runs in one transaction that is rolled
+ * back at the end, so the database is left unchanged.
+ *
+ * Usage: RatingSummaryCheck <dbname> <port> <user>
+ *
+ */
+
+public class RatingSummaryCheck {
+	static final String FIRST = "ZRSCHK01";
+	static final String SECOND = "ZRSCHK02";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: RatingSummaryCheck <dbname> <port> <user>");
+			return;
+		}
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		boolean ok = true;
+		try (PooledConnection pc = esql.getPool().borrow()) {
+			Connection conn = pc.getConnection();
+			conn.setAutoCommit(false);
+			try{
+				Statement st = conn.createStatement();
+				ResultSet rs = st.executeQuery("SELECT (SELECT MIN(airId) FROM Airline), (SELECT MIN(pID) FROM Passenger)");
+				rs.next();
+				int airId = rs.getInt(1);
+				int pID = rs.getInt(2);
+				rs.close();
+				for (String flightNum : new String[] { FIRST, SECOND }) {
+					st.executeUpdate("INSERT INTO Flight (airId, flightNum, origin, destination, plane, seats, duration) "
+						+ "VALUES (" + airId + ", '" + flightNum + "', 'Check Origin', 'Check City', 'Check Plane', 100, 1)");
+				}
+
+				int only = rate(conn, pID, FIRST, 4);
+				ok &= expect(st, "one rating", FIRST, 4, 1);
+				st.executeUpdate("UPDATE Ratings SET score = 2 WHERE rID = " + only);
+				ok &= expect(st, "only rating rescored", FIRST, 2, 1);
+				st.executeUpdate("UPDATE Ratings SET flightNum = '" + SECOND + "' WHERE rID = " + only);
+				ok &= expect(st, "only rating moved away", FIRST, 0, 0);
+				ok &= expect(st, "only rating moved in", SECOND, 2, 1);
+				int other = rate(conn, pID, SECOND, 5);
+				ok &= expect(st, "second rating", SECOND, 7, 2);
+				st.executeUpdate("DELETE FROM Ratings WHERE rID = " + other);
+				ok &= expect(st, "one of two deleted", SECOND, 2, 1);
+				st.executeUpdate("DELETE FROM Ratings WHERE rID = " + only);
+				ok &= expect(st, "only rating deleted", SECOND, 0, 0);
+
+				rs = st.executeQuery("SELECT COUNT(*) FROM "
+					+ "(SELECT flightNum, scoreSum, scoreCount, round(avgScore, 6) FROM RatingSummary "
+					+ "EXCEPT SELECT flightNum, SUM(score), COUNT(*), round(AVG(score), 6) FROM Ratings GROUP BY flightNum) D");
+				rs.next();
+				int drifted = rs.getInt(1);
+				rs.close();
+				System.out.println(String.format("%-24s %s", "summary matches Ratings", drifted == 0 ? "ok" : drifted + " rows differ"));
+				ok &= drifted == 0;
+				st.close();
+			}finally{
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+		}finally{
+			esql.cleanup();
+		}
+		System.out.println(ok ? "RatingSummary is consistent" : "RatingSummary is NOT consistent");
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	static int rate(Connection conn, int pID, String flightNum, int score) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(
+			"INSERT INTO Ratings (pID, flightNum, score, comment) VALUES (?, ?, ?, 'check') RETURNING rID");
+		ps.setInt(1, pID);
+		ps.setString(2, flightNum);
+		ps.setInt(3, score);
+		ResultSet rs = ps.executeQuery();
+		rs.next();
+		int rID = rs.getInt(1);
+		rs.close();
+		ps.close();
+		return rID;
+	}
+
+	/**
+	 * Prints whether the flight's summary row holds the given total and
+	 * count; a count of 0 means the row must be gone.
+	 */
+	static boolean expect(Statement st, String step, String flightNum, long sum, long count) throws SQLException {
+		ResultSet rs = st.executeQuery("SELECT scoreSum, scoreCount FROM RatingSummary WHERE flightNum = '" + flightNum + "'");
+		String actual = rs.next() ? rs.getLong(1) + "/" + rs.getLong(2) : "none";
+		rs.close();
+		String expected = count == 0 ? "none" : sum + "/" + count;
+		boolean ok = actual.equals(expected);
+		System.out.println(String.format("%-24s %s", step, ok ? "ok" : "expected " + expected + ", got " + actual));
+		return ok;
+	}
+}
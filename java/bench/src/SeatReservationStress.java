@@ -0,0 +1,132 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Books every passenger onto the smallest flight on an otherwise empty date
+ * from 1, 8 and 32 threads at once, then checks that exactly Flight.seats
+ * bookings were made, that SeatInventory agrees with Booking, and reports
+ * the booking throughput. The bookings made are deleted afterwards.
+ *
+ * Usage: SeatReservationStress <dbname> <port> <user> [rounds]
+ *
+ */
+
+public class SeatReservationStress {
+	static final int[] THREADS = { 1, 8, 32 };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: SeatReservationStress <dbname> <port> <user> [rounds]");
+			return;
+		}
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+		if (System.getProperty("airbooking.pool.max") == null) {
+			System.setProperty("airbooking.pool.max", "32");
+		}
+		Class.forName("org.postgresql.Driver");
+		final AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try{
+			List<List<String>> flight = esql.executeQueryAndReturnResult(
+				"SELECT flightNum, seats FROM Flight ORDER BY seats, flightNum LIMIT 1");
+			final String flightNum = flight.get(0).get(0).trim();
+			int seats = Integer.parseInt(flight.get(0).get(1));
+			List<List<String>> rows = esql.executeQueryAndReturnResult("SELECT pID FROM Passenger ORDER BY pID");
+			final int[] passengers = new int[rows.size()];
+			for (int i = 0; i < passengers.length; i++) {
+				passengers[i] = Integer.parseInt(rows.get(i).get(0));
+			}
+			System.out.println("Flight " + flightNum + " has " + seats + " seats; "
+				+ passengers.length + " passengers try to book it per round");
+			System.out.println("threads  round  booked  full  dup  overbooked  ms      bookings/s");
+
+			int day = 0;
+			boolean ok = true;
+			for (int threads : THREADS) {
+				for (int round = 1; round <= rounds; round++) {
+					final Date departure = Date.valueOf(java.time.LocalDate.of(2099, 1, 1).plusDays(day++));
+					clear(esql, flightNum, departure);
+
+					final AtomicInteger next = new AtomicInteger();
+					final AtomicInteger booked = new AtomicInteger();
+					final AtomicInteger full = new AtomicInteger();
+					final AtomicInteger dup = new AtomicInteger();
+					final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+					final CountDownLatch startGate = new CountDownLatch(1);
+					List<Thread> workers = new ArrayList<Thread>();
+					for (int t = 0; t < threads; t++) {
+						Thread w = new Thread(new Runnable() {
+							public void run() {
+								try{
+									startGate.await();
+									int i;
+									while ((i = next.getAndIncrement()) < passengers.length) {
+										SeatReservations.Status s = esql.getReservations().book(
+											esql.getBookRefs().next(), flightNum, departure, passengers[i]);
+										if (s == SeatReservations.Status.BOOKED) booked.incrementAndGet();
+										else if (s == SeatReservations.Status.FULL) full.incrementAndGet();
+										else dup.incrementAndGet();
+									}
+								}catch (Exception e){
+									failure.compareAndSet(null, e);
+								}
+							}
+						});
+						w.start();
+						workers.add(w);
+					}
+					long start = System.nanoTime();
+					startGate.countDown();
+					for (Thread w : workers) {
+						w.join();
+					}
+					long elapsed = System.nanoTime() - start;
+					if (failure.get() != null) {
+						throw failure.get();
+					}
+
+					int inBooking = Integer.parseInt(esql.executeQueryAndReturnResult(
+						"SELECT COUNT(*) FROM Booking WHERE flightNum = ? AND departure = ?", flightNum, departure).get(0).get(0));
+					List<List<String>> inv = esql.executeQueryAndReturnResult(
+						"SELECT booked FROM SeatInventory WHERE flightNum = ? AND departure = ?", flightNum, departure);
+					int inInventory = inv.isEmpty() ? 0 : Integer.parseInt(inv.get(0).get(0));
+					int overbooked = Math.max(0, inBooking - seats);
+					if (overbooked > 0 || inBooking != inInventory || inBooking != booked.get()) {
+						ok = false;
+						System.out.println("  MISMATCH: Booking=" + inBooking + " SeatInventory=" + inInventory + " reported=" + booked.get());
+					}
+					System.out.println(String.format("%7d  %5d  %6d  %4d  %3d  %10d  %6.1f  %10.0f",
+						threads, round, booked.get(), full.get(), dup.get(), overbooked,
+						elapsed / 1e6, (booked.get() + full.get()) / (elapsed / 1e9)));
+					clear(esql, flightNum, departure);
+				}
+			}
+			System.out.println(ok ? "No overbooking observed." : "FAILED: overbooking or drift observed.");
+			System.out.println(esql.getReservations().stats());
+			System.out.println(esql.getPool().stats());
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	static void clear(AirBooking esql, String flightNum, Date departure) throws Exception {
+		esql.executeUpdate("DELETE FROM Booking WHERE flightNum = ? AND departure = ?", flightNum, departure);
+		esql.executeUpdate("DELETE FROM SeatInventory WHERE flightNum = ? AND departure = ?", flightNum, departure);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Times the three write operations the old way, an insert followed by a
+ * SELECT reading the new row back, against the new way, an insert whose
+ * RETURNING clause hands the row back in the same round trip. Each round
+ * adds a passenger, books it onto a flight and reviews that flight. Test
+ * rows use passports starting with WB and departures in 2099, and are
+ * deleted afterwards.
+ *
+ * Usage: WriteBench <dbname> <port> <user> [iterations]
+ *
+ */
+
+public class WriteBench {
+	static final LocalDate DEPARTURE = LocalDate.of(2099, 1, 1);
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: WriteBench <dbname> <port> <user> [iterations]");
+			return;
+		}
+		int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+		Class.forName("org.postgresql.Driver");
+		AirBooking esql = new AirBooking(args[0], args[1], args[2], "");
+		try{
+			String flightNum = esql.executeQueryForResult("SELECT flightNum FROM Flight ORDER BY flightNum LIMIT 1").get(0, 0).trim();
+			Date bdate = Date.valueOf("1980-01-01");
+			LatencyHistogram[][] h = new LatencyHistogram[2][3];
+			int warmup = iterations / 10;
+			int n = 0;
+			for (int mode = 0; mode < 2; mode++) {
+				for (int op = 0; op < 3; op++) {
+					h[mode][op] = new LatencyHistogram();
+				}
+				boolean returning = mode == 1;
+				for (int i = -warmup; i < iterations; i++) {
+					String passNum = String.format("WB%08d", n++);
+					// every booking gets its own date, so no flight fills up
+					Date departure = Date.valueOf(DEPARTURE.plusDays(n));
+
+					long start = System.nanoTime();
+					List<List<String>> passenger;
+					if (returning) {
+						passenger = esql.executeUpdateReturning("INSERT INTO Passenger (passNum, fullName, bdate, country) "
+							+ "VALUES (?, ?, ?, ?) RETURNING *", passNum, "Write Bench", bdate, "Nowhere").getRows();
+					}
+					else {
+						esql.executeUpdate("INSERT INTO Passenger (passNum, fullName, bdate, country) VALUES (?, ?, ?, ?)",
+							passNum, "Write Bench", bdate, "Nowhere");
+						passenger = esql.executeQueryAndReturnResult("SELECT * FROM Passenger WHERE passNum = ?", passNum);
+					}
+					long added = System.nanoTime();
+					int pID = Integer.parseInt(passenger.get(0).get(0));
+
+					String bookRef = esql.getBookRefs().next();
+					List<List<String>> booking;
+					if (returning) {
+						booking = esql.getReservations().reserve(bookRef, flightNum, departure, pID).booking.getRows();
+					}
+					else {
+						esql.getReservations().book(bookRef, flightNum, departure, pID);
+						booking = esql.executeQueryAndReturnResult("SELECT * FROM Booking WHERE bookRef = ? AND departure = ?",
+							bookRef, departure);
+					}
+					long booked = System.nanoTime();
+
+					List<List<String>> rating;
+					if (returning) {
+						rating = esql.executeUpdateReturning("INSERT INTO Ratings (pID, flightNum, score, comment) "
+							+ "VALUES (?, ?, ?, ?) RETURNING *", pID, flightNum, 5, "benchmark").getRows();
+					}
+					else {
+						esql.executeUpdate("INSERT INTO Ratings (pID, flightNum, score, comment) VALUES (?, ?, ?, ?)",
+							pID, flightNum, 5, "benchmark");
+						rating = esql.executeQueryAndReturnResult("SELECT * FROM Ratings WHERE pID = ? AND flightNum = ?",
+							pID, flightNum);
+					}
+					long reviewed = System.nanoTime();
+					if (booking.size() != 1 || rating.size() != 1) {
+						throw new IllegalStateException("round " + i + " did not write its rows");
+					}
+					if (i >= 0) {
+						h[mode][0].record(added - start);
+						h[mode][1].record(booked - added);
+						h[mode][2].record(reviewed - booked);
+					}
+				}
+			}
+
+			String[] ops = { "add passenger", "book flight", "review flight" };
+			System.out.println("operation       read back p50 ms   mean ms   RETURNING p50 ms   mean ms   mean saved");
+			for (int op = 0; op < 3; op++) {
+				System.out.println(String.format("%-15s %16.3f %9.3f %18.3f %9.3f %11.0f%%", ops[op],
+					h[0][op].getValueAtPercentile(50) / 1e6, h[0][op].getMean() / 1e6,
+					h[1][op].getValueAtPercentile(50) / 1e6, h[1][op].getMean() / 1e6,
+					100 * (1 - h[1][op].getMean() / h[0][op].getMean())));
+			}
+		}finally{
+			esql.executeUpdate("DELETE FROM Ratings WHERE pID IN (SELECT pID FROM Passenger WHERE passNum LIKE 'WB%')");
+			esql.executeUpdate("DELETE FROM Booking WHERE pID IN (SELECT pID FROM Passenger WHERE passNum LIKE 'WB%')");
+			esql.executeUpdate("DELETE FROM Passenger WHERE passNum LIKE 'WB%'");
+			esql.cleanup();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+#! /bin/bash
+# Starts a throwaway PostgreSQL for the database benchmarks, loaded from
+# sql/create.sql and data/*.csv like the scripts/ folder do and upgraded
+# by the migrate command, or stops it and deletes its files.
+#
+# Example: ./db.sh start 7432
+#          ./db.sh stop 7432
+
+#PATH TO THROWAWAY DATABASE FOLDER
+export PGFOLDER=/tmp/$LOGNAME-jmh
+#PATH TO DATA FOLDER
+export PGDATA=$PGFOLDER/data
+#DATABASE LISTENING PORT
+export PGPORT=${2:-7432}
+#DBNAME
+export DBNAME=flightDB
+
+ROOT=$(cd "$(dirname "$0")/../.." && pwd)
+
+case "$1" in
+start)
+	rm -rf $PGFOLDER
+	mkdir -p $PGFOLDER/sockets
+	initdb -D $PGDATA > $PGFOLDER/initdb.log || exit 1
+	cp $ROOT/data/*.csv $PGDATA/
+	pg_ctl -o "-c unix_socket_directories=$PGFOLDER/sockets -p $PGPORT" -D $PGDATA -l $PGFOLDER/logfile -w start || exit 1
+	createdb -h 127.0.0.1 -p $PGPORT $DBNAME || exit 1
+	psql -q -h 127.0.0.1 -p $PGPORT $DBNAME < $ROOT/sql/create.sql > $PGFOLDER/create.log
+	# through the migrate command, so SchemaVersion records the migrations
+	# as on any database and a later migrate finds nothing to do
+	mkdir -p $PGFOLDER/bin
+	javac -nowarn -cp "$ROOT/java/lib/*" -d $PGFOLDER/bin $ROOT/java/src/*.java > $PGFOLDER/javac.log 2>&1 || exit 1
+	java -cp "$ROOT/java/lib/*:$PGFOLDER/bin" -Dairbooking.host=127.0.0.1 \
+		AirBooking $DBNAME $PGPORT $USER migrate --dir $ROOT/sql/migrations >> $PGFOLDER/create.log 2>&1
+	PENDING=$(psql -tA -h 127.0.0.1 -p $PGPORT $DBNAME -c "SELECT $(ls $ROOT/sql/migrations/*.sql | wc -l) - COUNT(*) FROM SchemaVersion")
+	if [ "$PENDING" != "0" ]; then
+		echo "Migrations failed, see $PGFOLDER/create.log"
+		exit 1
+	fi
+	psql -q -h 127.0.0.1 -p $PGPORT $DBNAME -c "VACUUM ANALYZE"
+	;;
+stop)
+	pg_ctl -D $PGDATA -m fast stop
+	rm -rf $PGFOLDER
+	;;
+*)
+	echo "Usage: $0 start|stop [port]"
+	exit 1
+	;;
+esac
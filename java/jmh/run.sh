@@ -0,0 +1,14 @@
+#! /bin/bash
+# Builds the benchmark jar and runs it with JMH's GC profiler, so that every
+# result carries allocation rates (gc.alloc.rate.norm is bytes per operation)
+# next to the throughput and sampled latency percentiles. Arguments are
+# passed on to JMH, e.g. a benchmark name pattern or -p rows=100.
+# QueryBench needs the database from ./db.sh start running on $PGPORT.
+#
+# Example: ./run.sh FormattingBench
+#          PGPORT=7432 ./run.sh QueryBench
+
+cd "$(dirname "$0")"
+mvn -q -B package || exit 1
+java -jar target/benchmarks.jar -prof gc -rf json -rff target/results.json \
+	-jvmArgsAppend "-Dairbooking.jmh.port=${PGPORT:-7432} -Dairbooking.jmh.db=flightDB -Dairbooking.jmh.user=$USER" "$@"
@@ -0,0 +1,123 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package airbooking.jmh;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The string helpers and result rendering that run on every menu
+ * operation, without a database: castString, getSaltString, and printing
+ * a result set the way the menu does (one print call per cell) against
+ * building the table in a StringBuilder and printing it once.
+ *
+ * Output goes to /dev/null through a PrintStream set up like System.out
+ * (128 byte buffer, flushed on every newline), so the syscall cost of
+ * per-cell printing is included.
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FormattingBench {
+	@Param({ "10", "100" })
+	public int rows;
+
+	private String _name;
+	private List<List<String>> _result;
+	private PrintStream _out;
+
+	@Setup(Level.Trial)
+	public void setUp() throws FileNotFoundException {
+		this._name = "san francisco international";
+		this._result = new ArrayList<List<String>>(this.rows);
+		for (int i = 0; i < this.rows; i++) {
+			// the width of a Flight row as returned by the driver, CHAR padding included
+			this._result.add(Arrays.asList("LH" + (500 + i) + "   ", "Beijing         ", "San Francisco   ",
+				"Boeing 747      ", Integer.toString(1 + i % 23)));
+		}
+		this._out = new PrintStream(new BufferedOutputStream(new FileOutputStream("/dev/null"), 128), true);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this._out.close();
+	}
+
+	@Benchmark
+	public String castString() throws Throwable {
+		return (String) Targets.CAST_STRING.invokeExact(this._name);
+	}
+
+	@Benchmark
+	public String saltString() throws Throwable {
+		return (String) Targets.SALT_STRING.invokeExact();
+	}
+
+	/**
+	 * The menu's rendering loop.
+	 */
+	@Benchmark
+	public void renderPerCell() {
+		List<List<String>> r = this._result;
+		this._out.print("FlightNum Origin            Destination       Plane             Duration (hrs)\n");
+		for (int i = 0; i < r.size(); i++) {
+			for (int j = 0; j < r.get(i).size(); j++) {
+				this._out.print(r.get(i).get(j) + "  ");
+			}
+			this._out.println();
+		}
+	}
+
+	/**
+	 * The same output built first and written with one call.
+	 */
+	@Benchmark
+	public void renderBuffered() {
+		List<List<String>> r = this._result;
+		StringBuilder sb = new StringBuilder(96 * (r.size() + 1));
+		sb.append("FlightNum Origin            Destination       Plane             Duration (hrs)\n");
+		for (int i = 0; i < r.size(); i++) {
+			for (int j = 0; j < r.get(i).size(); j++) {
+				sb.append(r.get(i).get(j)).append("  ");
+			}
+			sb.append(System.lineSeparator());
+		}
+		this._out.print(sb);
+		this._out.flush();
+	}
+}
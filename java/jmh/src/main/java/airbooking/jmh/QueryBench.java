@@ -0,0 +1,80 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package airbooking.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * executeQueryAndReturnResult against a database loaded from sql/create.sql
+ * and data/*.csv (see db.sh), for query shapes the menu runs: a primary
+ * key lookup, a short route list and a grouped aggregate. Each iteration
+ * borrows a pooled connection and reuses its cached prepared statement, as
+ * the application does.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBench {
+	private static final Object[] NO_PARAMS = new Object[0];
+
+	private Object _esql;
+
+	@Setup(Level.Trial)
+	public void connect() throws Throwable {
+		this._esql = Targets.connect();
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws Throwable {
+		Targets.CLEANUP.invokeExact(this._esql);
+	}
+
+	@Benchmark
+	public List<?> passengerById() throws Throwable {
+		return (List<?>) Targets.QUERY_AND_RETURN.invokeExact(this._esql,
+			"SELECT * FROM Passenger WHERE pID = ?", new Object[] { 42 });
+	}
+
+	@Benchmark
+	public List<?> flightsBetween() throws Throwable {
+		return (List<?>) Targets.QUERY_AND_RETURN.invokeExact(this._esql,
+			"SELECT F.flightNum, F.origin, F.destination, F.plane, F.duration FROM Flight F "
+			+ "WHERE F.origin = ? AND F.destination = ?", new Object[] { "Beijing", "San Francisco" });
+	}
+
+	@Benchmark
+	public List<?> popularDestinations() throws Throwable {
+		return (List<?>) Targets.QUERY_AND_RETURN.invokeExact(this._esql,
+			"SELECT COUNT(F.destination), F.destination FROM Flight F GROUP BY F.destination "
+			+ "ORDER BY COUNT(F.destination) DESC LIMIT 10", NO_PARAMS);
+	}
+}
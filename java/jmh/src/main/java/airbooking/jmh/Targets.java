@@ -0,0 +1,97 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+package airbooking.jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Handles on the application code under test. AirBooking lives in the
+ * default package, which a packaged class cannot import, and JMH refuses
+ * benchmarks in the default package. The methods are therefore reached
+ * through static final MethodHandles, which the JIT treats as constants
+ * and inlines, so the indirection does not show up in the measurements.
+ *
+ */
+
+final class Targets {
+	private static final Class<?> AIR_BOOKING = load("AirBooking");
+
+	//String castString(String)
+	static final MethodHandle CAST_STRING = method("castString", String.class);
+	//String getSaltString()
+	static final MethodHandle SALT_STRING = method("getSaltString");
+	//new AirBooking(dbname, port, user, passwd)
+	static final MethodHandle NEW_AIR_BOOKING;
+	//List<List<String>> executeQueryAndReturnResult(String, Object...), as (Object, String, Object[])List
+	static final MethodHandle QUERY_AND_RETURN;
+	//void cleanup(), as (Object)void
+	static final MethodHandle CLEANUP;
+
+	static {
+		try{
+			Constructor<?> c = AIR_BOOKING.getConstructor(String.class, String.class, String.class, String.class);
+			NEW_AIR_BOOKING = MethodHandles.lookup().unreflectConstructor(c)
+				.asType(MethodType.methodType(Object.class, String.class, String.class, String.class, String.class));
+			QUERY_AND_RETURN = MethodHandles.lookup()
+				.unreflect(AIR_BOOKING.getMethod("executeQueryAndReturnResult", String.class, Object[].class))
+				.asType(MethodType.methodType(List.class, Object.class, String.class, Object[].class));
+			CLEANUP = MethodHandles.lookup().unreflect(AIR_BOOKING.getMethod("cleanup"))
+				.asType(MethodType.methodType(void.class, Object.class));
+		}catch (ReflectiveOperationException e){
+			throw new ExceptionInInitializerError(e);
+		}//end try
+	}
+
+	private Targets() {
+	}
+
+	private static Class<?> load(String name) {
+		try{
+			return Class.forName(name);
+		}catch (ClassNotFoundException e){
+			throw new ExceptionInInitializerError(e);
+		}//end try
+	}
+
+	private static MethodHandle method(String name, Class<?>... parameterTypes) {
+		try{
+			Method m = AIR_BOOKING.getDeclaredMethod(name, parameterTypes);
+			m.setAccessible(true);
+			return MethodHandles.lookup().unreflect(m);
+		}catch (ReflectiveOperationException e){
+			throw new ExceptionInInitializerError(e);
+		}//end try
+	}
+
+	/**
+	 * Method to open the application against the benchmark database given by
+	 * the airbooking.jmh.db, airbooking.jmh.port and airbooking.jmh.user
+	 * system properties.
+	 *
+	 * @return the AirBooking instance
+	 * @throws java.lang.Throwable when the database is unreachable
+	 */
+	static Object connect() throws Throwable {
+		Class.forName("org.postgresql.Driver");
+		return (Object) NEW_AIR_BOOKING.invokeExact(
+			System.getProperty("airbooking.jmh.db", "flightDB"),
+			System.getProperty("airbooking.jmh.port", "7432"),
+			System.getProperty("airbooking.jmh.user", System.getProperty("user.name")),
+			"");
+	}
+}
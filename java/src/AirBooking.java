@@ -11,19 +11,32 @@
  */
 
 
-import java.sql.DriverManager;
 import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Date;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.time.LocalDate;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -32,19 +45,108 @@ import java.util.Random;
  */
 
 public class AirBooking{
-	//reference to physical database connection
-	private Connection _connection = null;
+	//pool of physical database connections shared by every session
+	private ConnectionPool _pool = null;
+	//sends read-only queries to healthy read replicas, when any are configured
+	private ReplicaRouter _replicas = null;
+	//number of SQL statements sent to the DBMS by the helpers below
+	private final AtomicLong _statementCount = new AtomicLong ();
+	//books seats without exceeding flight capacity
+	private SeatReservations _reservations = null;
+	//hands out unique booking references
+	private BookRefAllocator _bookRefs = null;
+	//in-memory flight catalog for route searches, null when disabled
+	private RouteIndex _routes = null;
+	//flights per destination, maintained from the route index
+	private DestinationRanking _destinations = null;
+	//repairs SeatInventory counters that drifted from Booking
+	private SeatInventoryReconciler _seatCounts = null;
+	//creates Booking's monthly partitions ahead of time
+	private BookingPartitions _partitions = null;
+	//latency, errors and rows per operation and per statement
+	private final Metrics _metrics = new Metrics();
+	//logs statements slower than a threshold with their plans, null when disabled
+	private SlowQueryLog _slowQueries = null;
+	//the menu operations in argument-driven form
+	private final Operations _operations = new Operations(this);
+	//rows fetched per round trip by streamed queries
+	static final int DEFAULT_FETCH_SIZE = Integer.getInteger("airbooking.fetchSize", 1000);
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 	
 	public AirBooking(String dbname, String dbport, String user, String passwd) throws SQLException {
 		System.out.print("Connecting to database...");
 		try{
 			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+			String url = "jdbc:postgresql://" + System.getProperty("airbooking.host", "localhost") + ":" + dbport + "/" + dbname;
+			// cached statements become server-side prepared after this many executions
+			String options = "?prepareThreshold=" + Integer.getInteger("airbooking.prepareThreshold", 5);
+			// once server-side prepared, int4 and date columns arrive in binary form
+			options += "&binaryTransfer=true&binaryTransferEnable=INT4,INT8,DATE";
+			// batched INSERTs are sent as multi-row statements
+			options += "&reWriteBatchedInserts=true";
+			url += options;
 			System.out.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// open the pool; sizes and timeouts can be tuned with -Dairbooking.pool.* properties
+			this._pool = new ConnectionPool(url, user, passwd,
+				Integer.getInteger("airbooking.pool.min", 1),
+				Integer.getInteger("airbooking.pool.max", 8),
+				Long.getLong("airbooking.pool.borrowTimeoutMs", 30000L),
+				Long.getLong("airbooking.pool.idleTimeoutMs", 600000L),
+				Long.getLong("airbooking.pool.leakThresholdMs", 60000L));
+			// read replicas, each host:port (same database) or a full JDBC URL
+			this._replicas = new ReplicaRouter(Long.getLong("airbooking.replicas.stickyMs", 2000L),
+				Long.getLong("airbooking.replicas.maxLagMs", 0L));
+			String replicas = System.getProperty("airbooking.replicas", "").trim();
+			if (replicas.length() > 0) {
+				for (String replica : replicas.split(",")) {
+					replica = replica.trim();
+					String replicaUrl = replica.startsWith("jdbc:") ? replica
+						: "jdbc:postgresql://" + replica + "/" + dbname + options + "&connectTimeout=5";
+					System.out.println ("Replica URL: " + replicaUrl);
+					// no connection is opened up front, a replica that is down only fails its health check
+					this._replicas.addReplica(replicaUrl, new ConnectionPool(replicaUrl, user, passwd, 0,
+						Integer.getInteger("airbooking.pool.max", 8),
+						Long.getLong("airbooking.replicas.borrowTimeoutMs", 5000L),
+						Long.getLong("airbooking.pool.idleTimeoutMs", 600000L),
+						Long.getLong("airbooking.pool.leakThresholdMs", 60000L)));
+				}
+				this._replicas.start(Long.getLong("airbooking.replicas.checkSeconds", 5L));
+			}
+			long slowMillis = Long.getLong("airbooking.slowQuery.ms", 0L);
+			if (slowMillis > 0) {
+				this._slowQueries = new SlowQueryLog(url, user, passwd, slowMillis,
+					new File(System.getProperty("airbooking.slowQuery.file", "slow-queries.log")),
+					Long.getLong("airbooking.slowQuery.maxBytes", 10L * 1024 * 1024),
+					Integer.getInteger("airbooking.slowQuery.files", 5),
+					Long.getLong("airbooking.slowQuery.explainIntervalSeconds", 60L),
+					Integer.getInteger("airbooking.slowQuery.explainTimeoutMs", 30000));
+			}
+			this._bookRefs = BookRefAllocator.fromSequence(this._pool);
+			this._reservations = new SeatReservations(this, Integer.getInteger("airbooking.reservation.stripes", 64));
+			if (!"false".equals(System.getProperty("airbooking.routes.index"))) {
+				this._routes = new RouteIndex(this);
+				this._destinations = new DestinationRanking();
+				this._routes.addListener(this._destinations);
+				try{
+					this._routes.start(Long.getLong("airbooking.routes.checkSeconds", 10L));
+				}catch(SQLException e){
+					System.err.println("Warning - route index unavailable, searching in the database: " + e.getMessage());
+					this._routes.stop();
+					this._routes = null;
+					this._destinations = null;
+				}
+			}
+			this._seatCounts = new SeatInventoryReconciler(this);
+			long reconcileMinutes = Long.getLong("airbooking.seats.reconcileMinutes", 0L);
+			if (reconcileMinutes > 0) {
+				this._seatCounts.start(reconcileMinutes);
+			}
+			this._partitions = new BookingPartitions(this);
+			int monthsAhead = Integer.getInteger("airbooking.partitions.monthsAhead", 3);
+			if (monthsAhead > 0) {
+				this._partitions.start(monthsAhead, Integer.getInteger("airbooking.partitions.retainMonths", 0));
+			}
 	        System.out.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
@@ -53,66 +155,335 @@ public class AirBooking{
 		}
 	}
 	
+	/**
+	 * Method to get the connection pool, e.g. to read its saturation metrics.
+	 * 
+	 * @return the connection pool used by every helper
+	 */
+	public ConnectionPool getPool() {
+		return this._pool;
+	}
+	
+	/**
+	 * Method to get the router that sends read-only queries to replicas.
+	 * 
+	 * @return the replica router, without replicas when none are configured
+	 */
+	public ReplicaRouter getReplicas() {
+		return this._replicas;
+	}
+	
+	/**
+	 * Method to get the seat reservation engine used to book flights.
+	 * 
+	 * @return the reservation engine
+	 */
+	public SeatReservations getReservations() {
+		return this._reservations;
+	}
+	
+	/**
+	 * Method to get the allocator of new booking references.
+	 * 
+	 * @return the bookRef allocator
+	 */
+	public BookRefAllocator getBookRefs() {
+		return this._bookRefs;
+	}
+	
+	/**
+	 * Method to get the in-memory route index.
+	 * 
+	 * @return the route index, or null when route searches go to the database
+	 */
+	public RouteIndex getRoutes() {
+		return this._routes;
+	}
+	
+	/**
+	 * Method to get the maintained destination popularity ranking.
+	 * 
+	 * @return the ranking, or null when it is computed in the database
+	 */
+	public DestinationRanking getDestinations() {
+		return this._destinations;
+	}
+	
+	public SeatInventoryReconciler getSeatCounts() {
+		return this._seatCounts;
+	}
+	
+	public BookingPartitions getPartitions() {
+		return this._partitions;
+	}
+	
+	public Operations getOperations() {
+		return this._operations;
+	}
+	
+	/**
+	 * Method to get the number of SQL statements executed so far through the
+	 * helpers of this object.
+	 * 
+	 * @return the number of statements sent to the DBMS
+	 */
+	public long getStatementCount() {
+		return this._statementCount.get ();
+	}
+	
+	/**
+	 * Method to get the latency statistics recorded by the helpers below and
+	 * by the operations, the same ones published over JMX.
+	 * 
+	 * @return the metrics of this object
+	 */
+	public Metrics getMetrics() {
+		return this._metrics;
+	}
+	
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
-	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP. Values are passed
+	 * as ? placeholders and bound in order, never concatenated into the SQL.
 	 * 
 	 * @param sql the input SQL string
+	 * @param params values for the ? placeholders
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = this._pool.borrow ()) {
+			// gets the cached statement object
+			PreparedStatement stmt = conn.prepare (sql);
+			bind (stmt, params);
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
-
-		// close the instruction
-	    stmt.close ();
+			// issues the update instruction
+			this._statementCount.incrementAndGet ();
+			rowCount = stmt.executeUpdate ();
+			this._replicas.wrote ();
+			return rowCount;
+		} finally {
+			finish (sql, params, start, rowCount);
+		}
 	}//end executeUpdate
 
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and outputs the results to
-	 * standard out.
+	 * standard out as an aligned table. Rows are streamed, so at most
+	 * ResultRenderer.TABLE_SAMPLE of them are held, to size the columns.
 	 * 
 	 * @param query the input query string
+	 * @param params values for the ? placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		ResultRenderer.Table table = ResultRenderer.stdout ().table ();
+		int rows = streamQuery (query, DEFAULT_FETCH_SIZE, table, params);
+		try {
+			table.finish ();
+		} catch (IOException e) {
+			throw new SQLException ("Could not write the result: " + e.getMessage (), e);
+		}
+		return rows;
+	}
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * write its result to out as CSV or as JSON lines. Rows go from the
+	 * ResultSet to the writer as they are fetched, so exports of any size
+	 * run in constant memory.
+	 * 
+	 * @param out where to write; flushed, not closed
+	 * @param format "csv" or "jsonl"
+	 * @param query the input query string
+	 * @param params values for the ? placeholders
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when failed to execute the query or write a row
+	 */
+	public int exportQuery (Writer out, String format, String query, Object... params) throws SQLException {
+		ResultRenderer renderer = new ResultRenderer (out);
+		RowHandler handler;
+		if (format.equals ("csv")) {
+			handler = renderer.csv ();
+		} else if (format.equals ("jsonl")) {
+			handler = renderer.jsonLines ();
+		} else {
+			throw new IllegalArgumentException ("Unknown export format " + format + ", expected csv or jsonl");
+		}
+		int rows = streamQuery (query, DEFAULT_FETCH_SIZE, handler, params);
+		try {
+			renderer.flush ();
+		} catch (IOException e) {
+			throw new SQLException ("Could not write the result: " + e.getMessage (), e);
+		}
+		return rows;
+	}
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * hand every row to a callback as it arrives. The query runs inside a
+	 * transaction with the given fetch size, so the driver reads the result
+	 * through a cursor fetchSize rows at a time instead of buffering all of
+	 * it; memory use stays constant however many rows the query returns.
+	 * The statement, cursor and transaction are closed before returning,
+	 * including when the handler stops early or throws.
+	 * 
+	 * @param query the input query string
+	 * @param fetchSize the number of rows fetched per round trip
+	 * @param handler the callback receiving each row
+	 * @param params values for the ? placeholders
+	 * @return the number of rows handed to the callback
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int streamQuery (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = this._pool.borrow ()) {
+			Connection c = conn.getConnection ();
+			//cursor based fetching only happens outside autocommit
+			c.setAutoCommit (false);
+			PreparedStatement stmt = conn.prepare (query);
+			try {
+				stmt.setFetchSize (fetchSize);
+				bind (stmt, params);
+				
+				//issues the query instruction
+				ResultSet rs = stmt.executeQuery ();
+				this._statementCount.incrementAndGet ();
+				int count = 0;
+				try {
+					while (rs.next ()) {
+						++count;
+						if (!handler.row (rs)) {
+							break;
+						}
+					}//end while
+				} finally {
+					rs.close ();
+				}
+				c.commit ();
+				rowCount = count;
+				return rowCount;
+			} finally {
+				//the statement is cached, so put back the default fetch size
+				stmt.setFetchSize (0);
+				if (!c.getAutoCommit ()) {
+					c.rollback ();
+					c.setAutoCommit (true);
+				}
+			}
+		} finally {
+			finish (query, params, start, rowCount);
+		}
+	}//end streamQuery
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS once and returns the rows together
+	 * with the row count and the column names, so callers never need to run
+	 * the same query again to learn how many rows it has.
+	 * 
+	 * @param query the input query string
+	 * @param params values for the ? placeholders
+	 * @return the rows, row count and column names of the result
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public QueryResult executeQueryForResult (String query, Object... params) throws SQLException { 
+		return queryForResult (this._pool, query, params);
+	}//end executeQueryForResult
+	
+	/**
+	 * Method to execute a read-only query (i.e. SELECT) on a read replica.
+	 * Replicas take turns; the primary answers when none is configured or
+	 * healthy, or when this thread wrote within the last
+	 * airbooking.replicas.stickyMs so it sees its own writes. A query that
+	 * loses its replica is run again on the primary. Replicas lag behind
+	 * the primary, so only queries that can show slightly old data belong
+	 * here.
+	 * 
+	 * @param query the input query string
+	 * @param params values for the ? placeholders
+	 * @return the rows, row count and column names of the result
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public QueryResult executeReadQuery (String query, Object... params) throws SQLException {
+		ReplicaRouter.Replica replica = this._replicas.pick ();
+		if (replica == null) {
+			return queryForResult (this._pool, query, params);
+		}
+		try {
+			return queryForResult (replica.getPool (), query, params);
+		} catch (SQLException e) {
+			if (!ReplicaRouter.isReplicaFailure (e)) {
+				throw e;
+			}
+			this._replicas.failed (replica, e);
+			return queryForResult (this._pool, query, params);
+		}
+	}//end executeReadQuery
+	
+	private QueryResult queryForResult (ConnectionPool pool, String query, Object[] params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = pool.borrow ()) {
+			//gets the cached statement object 
+			PreparedStatement stmt = conn.prepare (query); 
+			bind (stmt, params);
+			
+			//issues the query instruction 
+			ResultSet rs = stmt.executeQuery (); 
+			this._statementCount.incrementAndGet ();
+			try {
+				QueryResult result = QueryResult.read (rs);
+				rowCount = result.getRowCount ();
+				return result;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			finish (query, params, start, rowCount);
+		}
+	}//end queryForResult
+	
+	/**
+	 * Method to execute an INSERT, UPDATE or DELETE with a RETURNING clause.
+	 * The rows as stored, including values filled in by defaults and
+	 * triggers such as a generated pID or rID, come back with the write in
+	 * the same round trip, so the caller never reads them back with a
+	 * second query.
+	 * 
+	 * @param sql the input SQL string, ending in RETURNING
+	 * @param params values for the ? placeholders
+	 * @return the rows written, as RETURNING lists them
+	 * @throws java.sql.SQLException when the write failed
+	 */
+	public QueryResult executeUpdateReturning (String sql, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = this._pool.borrow ()) {
+			//gets the cached statement object
+			PreparedStatement stmt = conn.prepare (sql);
+			bind (stmt, params);
 
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
+			//issues the update instruction, which answers with its rows
+			ResultSet rs = stmt.executeQuery ();
+			this._statementCount.incrementAndGet ();
+			this._replicas.wrote ();
+			try {
+				QueryResult result = QueryResult.read (rs);
+				rowCount = result.getRowCount ();
+				return result;
+			} finally {
+				rs.close ();
 			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
-	}
+		} finally {
+			finish (sql, params, start, rowCount);
+		}
+	}//end executeUpdateReturning
 	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
@@ -120,103 +491,205 @@ public class AirBooking{
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
 	 * @param query the input query string
+	 * @param params values for the ? placeholders
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		return executeQueryForResult (query, params).getRows ();
 	}//end executeQueryAndReturnResult
 	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the result column by
+	 * column, each column read with its native getter, so integer and date
+	 * columns are never turned into strings.
+	 * 
+	 * @param query the input query string
+	 * @param params values for the ? placeholders
+	 * @return the typed, columnar query result
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult executeQueryForColumns (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = this._pool.borrow ()) {
+			//gets the cached statement object
+			PreparedStatement stmt = conn.prepare (query);
+			bind (stmt, params);
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+			this._statementCount.incrementAndGet ();
+			try {
+				ColumnarResult result = ColumnarResult.read (rs);
+				rowCount = result.getRowCount ();
+				return result;
+			} finally {
+				rs.close ();
+			}
+		} finally {
+			finish (query, params, start, rowCount);
+		}
+	}//end executeQueryForColumns
+	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
 	 * @param query the input query string
+	 * @param params values for the ? placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeQuery (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try (PooledConnection conn = this._pool.borrow ()) {
+			//gets the cached statement object
+			PreparedStatement stmt = conn.prepare (query);
+			bind (stmt, params);
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+			this._statementCount.incrementAndGet ();
 
-		int rowCount = 0;
+			int count = 0;
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+			//iterates through the result set and count nuber of results.
+			if(rs.next()){
+				count++;
+			}//end while
+			rs.close ();
+			rowCount = count;
+			return rowCount;
+		} finally {
+			finish (query, params, start, rowCount);
+		}
 	}
 	
 	/**
-	 * Method to fetch the last value from sequence. This
-	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * Method to record the time and outcome of a statement run by one of the
+	 * helpers above, or by a class that runs its own statements on a pooled
+	 * connection such as SeatReservations, and to hand it to the slow query
+	 * log.
 	 * 
-	 * @param sequence name of the DB sequence
-	 * @return current value of a sequence
-	 * @throws java.sql.SQLException when failed to execute the query
+	 * @param sql the statement text
+	 * @param params the values bound to it
+	 * @param start System.nanoTime() when the helper was entered
+	 * @param rowCount rows returned or affected, or -1 when it failed
 	 */
-	
-	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+	void finish (String sql, Object[] params, long start, int rowCount) {
+		finish (sql, params, start, rowCount, false);
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to record a statement as finish(sql, params, start, rowCount)
+	 * does, for a statement that writes although it may read like a query,
+	 * such as a SELECT from the bookFlight function.
+	 * 
+	 * @param sql the statement text
+	 * @param params the values bound to it
+	 * @param start System.nanoTime() when the statement was started
+	 * @param rowCount rows returned or affected, or -1 when it failed
+	 * @param write true when the slow query log must not run it again under
+	 *        EXPLAIN ANALYZE
+	 */
+	void finish (String sql, Object[] params, long start, int rowCount, boolean write) {
+		long nanos = System.nanoTime () - start;
+		this._metrics.statement (sql).record (nanos, rowCount);
+		if (this._slowQueries != null && nanos >= this._slowQueries.getThresholdNanos ()) {
+			this._slowQueries.offer (sql, params, nanos, rowCount, write);
+		}
+	}
+	
+	/**
+	 * Method to bind positional parameters to a prepared statement.
+	 * 
+	 * @param stmt the statement to bind
+	 * @param params values for the ? placeholders, in order
+	 * @throws java.sql.SQLException when a value cannot be bound
+	 */
+	static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+		for (int i = 0; i < params.length; i++) {
+			stmt.setObject (i + 1, params[i]);
+		}
+	}
+	
+	/**
+	 * Method to close every pooled physical connection.
 	 */
 	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
+		if (this._routes != null){
+			this._routes.stop ();
+		}//end if
+		if (this._seatCounts != null){
+			this._seatCounts.stop ();
+		}//end if
+		if (this._partitions != null){
+			this._partitions.stop ();
+		}//end if
+		if (this._slowQueries != null){
+			this._slowQueries.stop ();
+		}//end if
+		String dump = System.getProperty ("airbooking.metrics.dump");
+		if (dump != null){
+			dumpMetrics (dump);
+		}//end if
+		if (this._replicas != null){
+			if (Boolean.getBoolean ("airbooking.pool.stats") && this._replicas.hasReplicas ()){
+				System.err.println (this._replicas.stats ());
 			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
+			this._replicas.stop ();
+		}//end if
+		if (this._pool != null){
+			if (Boolean.getBoolean ("airbooking.pool.stats")){
+				System.err.println (this._pool.stats ());
+			}//end if
+			this._pool.close ();
+		}//end if
 	}//end cleanup
+	
+	/**
+	 * Method to write the latency statistics of every operation and
+	 * statement, to standard error for "true" or else to the named file.
+	 * 
+	 * @param target "true" or a file name
+	 */
+	private void dumpMetrics (String target) {
+		String text = this._metrics.dump ();
+		if (target.equals ("true")){
+			System.err.print (text);
+			return;
+		}//end if
+		try (Writer out = new OutputStreamWriter (new FileOutputStream (target), StandardCharsets.UTF_8)) {
+			out.write (text);
+		}catch (IOException e){
+			System.err.println ("Could not write metrics to " + target + ": " + e.getMessage ());
+		}//end try
+	}
 
 	/**
 	 * The main execution method
 	 * 
-	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+	 * @param args the command line arguments this inclues the <dbname> <port> <user>,
+	 *        optionally followed by a non-interactive command and its arguments
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		if (args.length < 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + AirBooking.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user> [command]\n" +
+		            "Commands:\n" +
+		            "  import-passengers <file.csv> [<rejects.csv>] [--update-existing]\n" +
+		            "  ingest-bookings <file.csv|-> [<rejects.csv>] [--chunk <rows>]\n" +
+		            "  reconcile-seats [--check]\n" +
+		            "  migrate [--dir <path>] [--status]\n" +
+		            "  partitions [--ahead <months>] [--archive-before <yyyy-mm-dd>]\n" +
+		            "  export <csv|jsonl> \"<SELECT ...>\" [--out <file>]\n" +
+		            "  batch <file|-> [--threads <n>]\n" +
+		            "  serve [--port <port>]\n" +
+		            "  <operation> [--<name> <value>]...   one operation, see README");
 			return;
 		}//end if
 		
@@ -239,6 +712,11 @@ public class AirBooking{
 			
 			esql = new AirBooking (dbname, dbport, user, "");
 			
+			if (args.length > 3) {
+				runCommand (esql, Arrays.copyOfRange (args, 3, args.length));
+				return;
+			}
+			
 			boolean keepon = true;
 			while(keepon){
 				System.out.println("\nMAIN MENU");
@@ -280,6 +758,164 @@ public class AirBooking{
 		}
 	}
 
+	/**
+	 * Method to run one non-interactive command given on the command line
+	 * 
+	 * @param esql the database to run against
+	 * @param cmd the command name followed by its arguments
+	 * @throws java.lang.Exception when the command fails
+	 */
+	public static void runCommand(AirBooking esql, String[] cmd) throws Exception {
+		if (cmd[0].equals("import-passengers") && cmd.length >= 2) {
+			String rejectFile = cmd[1] + ".rejects";
+			boolean updateExisting = false;
+			for (int i = 2; i < cmd.length; i++) {
+				if (cmd[i].equals("--update-existing")) {
+					updateExisting = true;
+				}
+				else {
+					rejectFile = cmd[i];
+				}
+			}
+			PassengerImport importer = new PassengerImport(esql, updateExisting);
+			try (Reader input = new InputStreamReader(new FileInputStream(cmd[1]), StandardCharsets.UTF_8);
+					Writer rejects = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejectFile), StandardCharsets.UTF_8))) {
+				importer.run(input, rejects);
+			}
+			System.out.println(importer.stats());
+			System.out.println("Rejected rows written to " + rejectFile);
+		}
+		else if (cmd[0].equals("ingest-bookings") && cmd.length >= 2) {
+			String rejectFile = (cmd[1].equals("-") ? "stdin" : cmd[1]) + ".rejects";
+			int chunkSize = 1000;
+			for (int i = 2; i < cmd.length; i++) {
+				if (cmd[i].equals("--chunk") && i + 1 < cmd.length) {
+					chunkSize = Integer.parseInt(cmd[++i]);
+				}
+				else {
+					rejectFile = cmd[i];
+				}
+			}
+			BookingIngest ingest = new BookingIngest(esql, chunkSize);
+			InputStream source = cmd[1].equals("-") ? System.in : new FileInputStream(cmd[1]);
+			try (Reader input = new InputStreamReader(source, StandardCharsets.UTF_8);
+					Writer rejects = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(rejectFile), StandardCharsets.UTF_8))) {
+				ingest.run(input, rejects);
+			}
+			System.out.println(ingest.stats());
+			System.out.println("Rejected rows written to " + rejectFile);
+		}
+		else if (cmd[0].equals("reconcile-seats")) {
+			boolean checkOnly = cmd.length > 1 && cmd[1].equals("--check");
+			List<SeatInventoryReconciler.Drift> drift = checkOnly
+				? esql.getSeatCounts().check() : esql.getSeatCounts().reconcile();
+			for (SeatInventoryReconciler.Drift d : drift) {
+				System.out.println(d);
+			}
+			System.out.println(drift.size() + " seat counts " + (checkOnly ? "drifted" : "repaired"));
+		}
+		else if (cmd[0].equals("migrate")) {
+			File dir = new File("../sql/migrations");
+			boolean statusOnly = false;
+			for (int i = 1; i < cmd.length; i++) {
+				if (cmd[i].equals("--dir") && i + 1 < cmd.length) {
+					dir = new File(cmd[++i]);
+				}
+				else if (cmd[i].equals("--status")) {
+					statusOnly = true;
+				}
+			}
+			SchemaMigrator migrator = new SchemaMigrator(esql, dir);
+			if (statusOnly) {
+				System.out.println(migrator.status(System.out) + " migrations pending");
+			}
+			else {
+				migrator.migrate(System.out);
+			}
+		}
+		else if (cmd[0].equals("partitions")) {
+			int ahead = 3;
+			Date archiveBefore = null;
+			for (int i = 1; i < cmd.length; i++) {
+				if (cmd[i].equals("--ahead") && i + 1 < cmd.length) {
+					ahead = Integer.parseInt(cmd[++i]);
+				}
+				else if (cmd[i].equals("--archive-before") && i + 1 < cmd.length) {
+					archiveBefore = Date.valueOf(cmd[++i]);
+				}
+			}
+			System.out.println(esql.getPartitions().create(ahead) + " Booking partitions created");
+			if (archiveBefore != null) {
+				System.out.println(esql.getPartitions().archive(archiveBefore) + " Booking partitions archived");
+			}
+		}
+		else if (cmd[0].equals("export") && cmd.length >= 3) {
+			String outFile = null;
+			for (int i = 3; i < cmd.length; i++) {
+				if (cmd[i].equals("--out") && i + 1 < cmd.length) {
+					outFile = cmd[++i];
+				}
+			}
+			OutputStream target = outFile == null ? System.out : new FileOutputStream(outFile);
+			Writer out = new OutputStreamWriter(target, StandardCharsets.UTF_8);
+			int rows;
+			try{
+				rows = esql.exportQuery(out, cmd[1], cmd[2]);
+			}finally{
+				if (outFile != null) {
+					out.close();
+				}
+			}//end try
+			// the count goes to stderr so an export to stdout stays clean
+			System.err.println(rows + " rows exported" + (outFile == null ? "" : " to " + outFile));
+		}
+		else if (cmd[0].equals("batch") && cmd.length >= 2) {
+			int threads = 1;
+			for (int i = 2; i < cmd.length; i++) {
+				if (cmd[i].equals("--threads") && i + 1 < cmd.length) {
+					threads = Integer.parseInt(cmd[++i]);
+				}
+			}
+			BatchRunner batch = new BatchRunner(esql, System.out, threads);
+			InputStream source = cmd[1].equals("-") ? System.in : new FileInputStream(cmd[1]);
+			try (Reader input = new InputStreamReader(source, StandardCharsets.UTF_8)) {
+				batch.run(input);
+			}
+			System.err.println(batch.stats());
+		}
+		else if (cmd[0].equals("serve")) {
+			int port = 8080;
+			for (int i = 1; i < cmd.length; i++) {
+				if (cmd[i].equals("--port") && i + 1 < cmd.length) {
+					port = Integer.parseInt(cmd[++i]);
+				}
+			}
+			final AirBooking db = esql;
+			final HttpApi api = new HttpApi(esql, port, Integer.getInteger("airbooking.http.threads", 200));
+			final CountDownLatch stopped = new CountDownLatch(1);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					api.stop(5);
+					System.out.println(api.stats());
+					db.cleanup();
+					stopped.countDown();
+				}
+			});
+			api.start();
+			System.out.println("Serving on port " + api.getPort() + " with "
+				+ (api.usesVirtualThreads() ? "virtual" : "platform") + " threads; stop with Ctrl-C");
+			stopped.await();
+		}
+		else if (Operations.isOperation(cmd[0])) {
+			BatchRunner batch = new BatchRunner(esql, System.out, 1);
+			batch.run(cmd);
+			System.err.println(batch.stats());
+		}
+		else {
+			System.err.println("Unknown command: " + String.join(" ", cmd));
+		}
+	}
+
 	public static int readChoice() {
 		int input;
 		// returns only if a correct value is given.
@@ -312,8 +948,8 @@ public class AirBooking{
                     System.out.println("\nInvalid length, all Passport Numbers must be 10 characters long.");
                 }
                 else {
-                    String q = "SELECT passNum FROM Passenger WHERE passNum = '" + passport + "' ";
-                    int r = esql.executeQuery(q);
+                    String q = "SELECT passNum FROM Passenger WHERE passNum = ?";
+                    int r = esql.executeQuery(q, passport);
                     if (r == 0) {
                         break;
                     }
@@ -334,7 +970,6 @@ public class AirBooking{
 					break;
 				}
             } while (true);
-            fullName = castString(fullName);
 
             int m;
 			do { 
@@ -399,6 +1034,7 @@ public class AirBooking{
 				}
 			} while (true);
 			String date = m + "/" + d + "/" + y;
+			Date bdate = Date.valueOf(LocalDate.of(y, m, d));
 
             String country;
             do {
@@ -411,30 +1047,23 @@ public class AirBooking{
                     System.out.println("\nCountry cannot be empty.");
                 }
             } while (true);
-            country = castString(country);
 
-            String query = "INSERT INTO Passenger (passNum, fullName, bdate, country) ";
-            query += "VALUES ('" +  passport + "', '" + fullName + "', '" + date + "', '" + country + "')";
-			esql.executeUpdate(query);
+            // The new row, with the pID the trigger assigned, comes back from the insert.
+			List<List<String>> r;
+			try{
+				r = esql.getOperations().addPassenger(passport, fullName, bdate, country).getRows();
+			}catch (Operations.Rejected e){
+				System.out.println("\nError: " + e.getMessage());
+				return;
+			}//end try
 			System.out.println("\nSuccessfully entered into database.");
 			
-			// Getting the current user just entered into database.
-			query = "SELECT * FROM Passenger WHERE passNum = '" + passport + "' ";
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
-			
-			// Formatting output
-			System.out.print("pID PassNum    Fullname                 Birthday  Country\n");
-			for (int i = 0; i < r.size(); i++) {
-				for (int j = 0; j < r.get(i).size(); j++) {
-					if (j != 3) {
-						System.out.print(r.get(i).get(j) + " ");
-					}
-					else {
-						System.out.print(date + " ");
-					}
-				}
-				System.out.println();
+			// Formatting output, with the birthday as it was entered
+			for (List<String> row : r) {
+				row.set(3, date);
 			}
+			ResultRenderer.stdout().table(Arrays.asList("pID", "PassNum", "Fullname", "Birthday", "Country"),
+				new QueryResult(Arrays.asList("pid", "passnum", "fullname", "bdate", "country"), r));
 			
 		} catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -446,19 +1075,6 @@ public class AirBooking{
         //Book Flight for an existing customer
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-            
-            // Generate random string for bookRef variable. This loop first checks the booking
-            // table to guarantee its uniqueness of bookRef before insertion.
-            String bookRef;
-            do {
-                bookRef = getSaltString();
-
-                String q = "SELECT bookRef FROM Booking WHERE bookRef = '" + bookRef + "' ";
-                int r = esql.executeQuery(q);
-                if (r == 0) {
-                    break;
-                }
-            } while (true);
 
             // Getting the month from the user
             int m;
@@ -526,58 +1142,49 @@ public class AirBooking{
 				}
 			} while (true);
 			String date = m + "/" + d + "/" + y;
+			Date departure = Date.valueOf(LocalDate.of(y, m, d));
             
             String flightNum;
             do {
                 System.out.print("Enter the flight number: ");
                 flightNum = br.readLine();
                 if (flightNum.length() != 0) {
-                    String q = "SELECT flightNum FROM Flight WHERE Flight.flightNum = '" + flightNum + "' ";
-					int r = esql.executeQuery(q);
-					if (r == 0) {
-						System.out.println("\nError: This flightNum doesn't exist in database.");
-						return;
-					}
-					else {
-						break;
-					}
+                    break;
                 }
             } while (true);
 
-            String pID;
+            int pID;
             do {
                 System.out.print("Enter the passenger ID: ");
-                pID = br.readLine();
-                if (pID.length() != 0) {
-                    String q = "SELECT pID FROM Passenger WHERE Passenger.pID = '" + pID + "' ";
-					int r = esql.executeQuery(q);
-					if (r == 0) {
-						System.out.println("\nError: This pID doesn't exist in database.");
-						return;
-					}
-					else {
-						break;
-					}
+                String input = br.readLine();
+                if (input.length() != 0) {
+                    try {
+                        pID = Integer.parseInt(input);
+                        break;
+                    } catch (NumberFormatException e) {
+                        System.out.println("\nInvalid input. Please enter the passenger ID as a number.");
+                    }
                 }
             } while (true);
 
-            String query = "INSERT INTO Booking (bookRef, departure, flightNum, pID) ";
-            query += "VALUES ('" +  bookRef + "', '" + date + "', '" + flightNum + "', '" + pID + "')";
-            esql.executeUpdate(query);
+            // One call to the bookFlight function checks the flight, the passenger
+            // and the seats and makes the booking; capacity is enforced atomically.
+            QueryResult booking;
+            try{
+                booking = esql.getOperations().book(flightNum, pID, departure);
+            }catch (Operations.Rejected e){
+                if (e.getReason() == Operations.Reason.FULL) {
+                    System.out.println("\nError: Flight " + flightNum + " is fully booked on " + date + ".");
+                }
+                else {
+                    System.out.println("\nError: " + e.getMessage());
+                }
+                return;
+            }//end try
             System.out.println("\nSuccessfully entered into database.");
             
-            // Getting the current user just entered into database.
-			query = "SELECT * FROM Booking WHERE bookRef = '" + bookRef + "' ";
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
-			
-			// Formatting output
-			System.out.print("BookRef       Departure     FlightNum   pID\n");
-			for (int i = 0; i < r.size(); i++) {
-				for (int j = 0; j < r.get(i).size(); j++) {
-					System.out.print(r.get(i).get(j) + "    ");
-				}
-				System.out.println();
-			}
+            // The booking as stored, returned by the insert itself.
+			ResultRenderer.stdout().table(Arrays.asList("BookRef", "Departure", "FlightNum", "pID"), booking);
             
         } catch(Exception e) {
             System.err.println(e.getMessage());
@@ -590,13 +1197,19 @@ public class AirBooking{
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 
-            String pID;
+            int pID;
             do {
                 System.out.print("Enter the passenger ID: ");
-                pID = br.readLine();
-                if (pID.length() != 0) {
-                    String q = "SELECT pID FROM Passenger WHERE Passenger.pID = '" + pID + "' ";
-					int r = esql.executeQuery(q);
+                String input = br.readLine();
+                if (input.length() != 0) {
+                    try {
+                        pID = Integer.parseInt(input);
+                    } catch (NumberFormatException e) {
+                        System.out.println("\nInvalid input. Please enter the passenger ID as a number.");
+                        continue;
+                    }
+                    String q = "SELECT pID FROM Passenger WHERE Passenger.pID = ?";
+					int r = esql.executeQuery(q, pID);
 					if (r == 0) {
 						System.out.println("\nError: This pID doesn't exist in database.");
 						return;
@@ -615,8 +1228,8 @@ public class AirBooking{
                 System.out.print("Enter the flight number: ");
                 flightNum = br.readLine();
                 if (flightNum.length() != 0) {
-                    String q = "SELECT flightNum FROM Flight WHERE Flight.flightNum = '" + flightNum + "' ";
-					int r = esql.executeQuery(q);
+                    String q = "SELECT flightNum FROM Flight WHERE Flight.flightNum = ?";
+					int r = esql.executeQuery(q, flightNum);
 					if (r == 0) {
 						System.out.println("\nError: This flightNum doesn't exist in database.");
 						return;
@@ -632,8 +1245,8 @@ public class AirBooking{
             
             // Guaranteeing that a passenger has booked a specific flight.
             // Passengers can only rate flights they've ridden on.
-            String q = "SELECT pID, flightNum FROM Booking WHERE piD = '" + pID + "' AND flightNum = '" + flightNum + "' ";
-            int r = esql.executeQuery(q);
+            String q = "SELECT pID, flightNum FROM Booking WHERE piD = ? AND flightNum = ?";
+            int r = esql.executeQuery(q, pID, flightNum);
             if (r == 0) {
                 System.out.println("\nError: No booking record found for this passenger and flight.");
                 System.out.println("       Passenger cannot rate a flight they did not fly on.");
@@ -641,20 +1254,20 @@ public class AirBooking{
             }  
             
             // Checking if passenger has already rated this flight.
-            q = "SELECT pID, flightNum FROM Ratings WHERE pID = '" + pID + "' AND flightNUM = '" + flightNum + "' ";
-			r = esql.executeQuery(q);
+            q = "SELECT pID, flightNum FROM Ratings WHERE pID = ? AND flightNUM = ?";
+			r = esql.executeQuery(q, pID, flightNum);
             if (r == 1) {
                 System.out.println("\nError: Cannot rate some flight twice.");
                 return;
             } 
 
-            String score;
+            int score;
             do {
                 System.out.print("Enter a score on a scale from 0-5: ");
                 try {
-                    score = br.readLine();
-                    int s = Integer.parseInt(score);
-                    if (s < 0 || s > 5 || score.length() == 0) {
+                    String input = br.readLine();
+                    score = Integer.parseInt(input);
+                    if (score < 0 || score > 5 || input.length() == 0) {
                         System.out.println("\nInvalid input.");
                         continue;
                     }
@@ -671,31 +1284,18 @@ public class AirBooking{
             String comment;
             comment = br.readLine();
 
-            String query = "INSERT INTO Ratings (pID, flightNum, score, comment) ";
-            query += "VALUES ('" +  pID + "', '" + flightNum + "', '" + score + "', '" + comment + "')";
-			esql.executeUpdate(query);
+            // The new rating, with the rID the trigger assigned, comes back from the insert.
+			QueryResult s;
+			try{
+				s = esql.getOperations().review(pID, flightNum, score, comment);
+			}catch (Operations.Rejected e){
+				System.out.println("\nError: " + e.getMessage());
+				return;
+			}//end try
 			System.out.println("\nSuccessfully entered into database.");
 
-
-		//NEW STUFF  
-			// Getting the current user just entered into database.
-			query = "SELECT * FROM Ratings WHERE pID = '" + pID + "' AND flightNum = '" + flightNum + "' ";
-			List<List<String>> s = esql.executeQueryAndReturnResult(query);
-			
 			// Formatting output
-			System.out.print("rID     pID     FlightNum       Score    Comment\n");
-			for (int i = 0; i < s.size(); i++) {
-				for (int j = 0; j < s.get(i).size(); j++) {
-					if (j == 0 || j == 1) {
-						System.out.print(s.get(i).get(j) + "\t");
-					}
-					else {
-						System.out.print(s.get(i).get(j) + "        ");
-					}
-				}
-				System.out.println();
-			}
-		// END NEW STUFF
+			ResultRenderer.stdout().table(Arrays.asList("rID", "pID", "FlightNum", "Score", "Comment"), s);
         
         
         } catch(Exception e) {
@@ -747,30 +1347,16 @@ public class AirBooking{
             } while (true);
             destination = castString(destination);
 
-			String query = "SELECT F.flightNum, F.origin, F.destination, F.plane, F.duration ";
-			query += "FROM Flight F ";
-			query += "WHERE F.origin = '" + origin + "' ";
-			query += "AND F.destination = '" + destination + "';";
-
-			int rowCount = esql.executeQuery(query);
+			QueryResult r = esql.getOperations().routes(origin, destination);
+			int rowCount = r.getRowCount();
 			if (rowCount == 0) {
 				System.out.println("\nThere are no flights between " + origin + " and " + destination + ".");
 			}
 			
-			//NEW STUFF: Formatting result output
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
-			
 			// Formatting output
 			if (rowCount != 0)
 			{
-				System.out.print("FlightNum Origin            Destination       Plane             Duration (hrs)\n");
-					for (int i = 0; i < r.size(); i++) {
-						for (int j = 0; j < r.get(i).size(); j++) {
-								System.out.print(r.get(i).get(j) + "  ");
-						}
-						System.out.println();
-					}
-				// END NEW STUFF
+				ResultRenderer.stdout().table(Arrays.asList("FlightNum", "Origin", "Destination", "Plane", "Duration (hrs)"), r);
 			}
 
 		} catch(Exception e) {
@@ -784,40 +1370,30 @@ public class AirBooking{
 		try{
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
             
-            String results;
+            int results;
             do {
                 System.out.print("Please enter the number of results you would like to see: ");
-                results = br.readLine();
-                if (results.length() != 0) {
-                    break;
+                String input = br.readLine();
+                if (input.length() != 0) {
+                    try {
+                        results = Integer.parseInt(input);
+                        break;
+                    } catch (NumberFormatException e) {
+                        System.out.println("\nInvalid input. Please enter a number.");
+                    }
                 }
                 else {
                     System.out.println();
                 }
             } while (true);
 
-			String query = "SELECT COUNT(F.destination), F.destination ";
-			query += "FROM Flight F ";
-			query += "GROUP BY F.destination ";
-			query += "ORDER BY COUNT(F.destination) DESC ";
-			query += "LIMIT " + results + ";";
-
-			int rowCount = esql.executeQuery(query);
-		
-			//NEW STUFF: Formatting result output
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
+			QueryResult r = esql.getOperations().popularDestinations(results);
+			int rowCount = r.getRowCount();
 			
 			// Formatting output
 			if (rowCount != 0)
 			{
-				System.out.print("Count    Destination\n");
-					for (int i = 0; i < r.size(); i++) {
-						for (int j = 0; j < r.get(i).size(); j++) {
-								System.out.print(r.get(i).get(j) + "       ");
-						}
-						System.out.println();
-					}
-				// END NEW STUFF
+				ResultRenderer.stdout().table(Arrays.asList("Count", "Destination"), r);
 			}
 		
 		} catch(Exception e) {
@@ -830,42 +1406,30 @@ public class AirBooking{
         //List the k highest rated Routes (i.e. Airline Name, flightNum, Avg_Score)
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-            String results;
+            int results;
             do {
                 System.out.print("Please enter the number of results you would like to see: ");
-                results = br.readLine();
-                if (results.length() != 0) {
-                    break;
+                String input = br.readLine();
+                if (input.length() != 0) {
+                    try {
+                        results = Integer.parseInt(input);
+                        break;
+                    } catch (NumberFormatException e) {
+                        System.out.println("\nInvalid input. Please enter a number.");
+                    }
                 }
                 else {
                     System.out.println("\nResults cannot be empty.");
                 }
             } while (true);
 
-            String query = "SELECT A.name, F.flightNum, F.origin, F.destination, ";
-            query += "F.plane, AVG(R.score) AS \"score\" ";
-            query += "FROM Airline A, Flight F, Ratings R ";
-            query += "WHERE A.airId = F.airId AND F.flightNum = R.flightNum ";
-            query += "GROUP BY F.destination, A.name, F.flightNum ";
-            query += "ORDER BY AVG(R.score) DESC ";
-            query += "LIMIT " + results + ";";
-            
-            int rowCount = esql.executeQuery(query);
+            QueryResult result = esql.getOperations().highestRatedRoutes(results);
+            int rowCount = result.getRowCount();
         
-        //NEW STUFF: Formatting result output
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
-			
 			// Formatting output
 			if (rowCount != 0)
 			{
-				System.out.print("Airline Name                   FlightNum      Origin                 Destination            Plane                  Score\n");
-					for (int i = 0; i < r.size(); i++) {
-						for (int j = 0; j < r.get(i).size(); j++) {
-								System.out.print(r.get(i).get(j) + "       ");
-						}
-						System.out.println();
-					}
-				// END NEW STUFF
+				ResultRenderer.stdout().table(Arrays.asList("Airline Name", "FlightNum", "Origin", "Destination", "Plane", "Score"), result);
 			}
         
         
@@ -905,43 +1469,30 @@ public class AirBooking{
             } while (true);
             destination = castString(destination);
             
-            String results;
+            int results;
             do {
                 System.out.print("Please enter the number of results you would like to see: ");
-                results = br.readLine();
-                if (results.length() != 0) {
-                    break;
+                String input = br.readLine();
+                if (input.length() != 0) {
+                    try {
+                        results = Integer.parseInt(input);
+                        break;
+                    } catch (NumberFormatException e) {
+                        System.out.println("\nInvalid input. Please enter a number.");
+                    }
                 }
                 else {
                     System.out.println("\nResults cannot be empty.");
                 }
             } while (true);
 
-			String query = "SELECT A.name, F.flightNum, F.origin, F.destination, F.plane, F.duration ";
-            query += "FROM Airline A, Flight F ";
-            query += "WHERE A.airId = F.airID AND ";
-            query += "F.origin = '" + origin + "' AND ";
-            query += "F.destination = '" + destination + "' ";
-            query += "GROUP BY F.flightNum, A.name, A.airID ";
-            query += "ORDER BY F.duration DESC ";
-            query += "LIMIT " + results + "; ";
-            
-			int rowCount = esql.executeQuery(query);
-			
-			//NEW STUFF: Formatting result output
-			List<List<String>> r = esql.executeQueryAndReturnResult(query);
+			QueryResult r = esql.getOperations().flightsByDuration(origin, destination, results);
+			int rowCount = r.getRowCount();
 			
 			// Formatting output
 			if (rowCount != 0)
 			{
-				System.out.print("Airline Name               FlightNum  Origin             Destination        Plane              Duration(hrs)\n");
-					for (int i = 0; i < r.size(); i++) {
-						for (int j = 0; j < r.get(i).size(); j++) {
-								System.out.print(r.get(i).get(j) + "   ");
-						}
-						System.out.println();
-					}
-				// END NEW STUFF
+				ResultRenderer.stdout().table(Arrays.asList("Airline Name", "FlightNum", "Origin", "Destination", "Plane", "Duration(hrs)"), r);
 			}
 			else {
 				System.out.println("\nThere are no flights between " + origin + " and " + destination + ".");
@@ -963,8 +1514,8 @@ public class AirBooking{
                 System.out.print("Enter the flight number: ");
                 flightNum = br.readLine();
                 if (flightNum.length() != 0) {
-					String q = "SELECT flightNum FROM Flight WHERE Flight.flightNum = '" + flightNum + "' ";
-					int r = esql.executeQuery(q);
+					String q = "SELECT flightNum FROM Flight WHERE Flight.flightNum = ?";
+					int r = esql.executeQuery(q, flightNum);
 					if (r == 0) {
 						System.out.println("\nError: This flightNum doesn't exist in database.");
 						return;
@@ -1037,58 +1588,11 @@ public class AirBooking{
 					System.out.println("\nInvalid Input. Please enter a number(s)");
 				}
 			} while (true);
-			String date = m + "/" + d + "/" + y;
+			Date departure = Date.valueOf(LocalDate.of(y, m, d));
 
-			String query = "SELECT DISTINCT F.flightNum, F.origin, F.destination, B.departure, ";
-			query += "F.seats AS \"total seats\", COUNT(B.flightNum) AS \"booked seats\", ";
-			query += "F.seats - COUNT(B.flightNum) as \"available seats\" ";
-			query += "FROM Booking B, Flight F ";
-			query += "WHERE F.flightNum = '" + flightNum + "' AND ";
-			query += "B.flightNum = F.flightNum AND ";
-			query += "B.departure = '" + date + "' ";
-			query += "GROUP BY B.departure, F.flightNum ";
-
-			int rowCount = esql.executeQuery(query);
+			QueryResult r = esql.getOperations().availableSeats(flightNum, departure);
 			
-			if (rowCount == 0) {
-				// If unbooked flight make sure we tell there are 0 booked flights so far. 
-				query = "SELECT Flight.flightNum, Flight.origin, Flight.destination, ";
-				query += "Booking.departure, Flight.seats AS \"total seats\", ";
-				query += "COUNT(Flight.flightNum) - 1 AS \"booked seats\", ";
-				query += "Flight.seats AS \"available seats\" ";
-				query += "FROM Flight ";
-				query += "LEFT JOIN Booking on Booking.flightNum = Flight.flightNum ";
-				query += "WHERE Flight.flightNum = '" + flightNum + "' ";
-				query += "GROUP BY Booking.departure, Flight.flightNum ";
-				List<List<String> > r = esql.executeQueryAndReturnResult(query);
-				
-				System.out.print("Flightnum       Origin                  Destination             ");
-				System.out.print("Departure Seats      Booked   Available\n");
-				for (int i = 0; i < r.size(); i++) {
-					for (int j = 0; j < r.get(i).size(); j++) {
-						if (j != 3) {
-							System.out.print(r.get(i).get(j) + "        ");
-						}
-						else {
-							System.out.print(date + "  ");
-						}
-					}
-					System.out.println();
-				}
-			}
-			else {
-				// Formatting when having unempty results.
-				List<List<String> > r = esql.executeQueryAndReturnResult(query);
-				
-				System.out.print("Flightnum       Origin                  Destination             ");
-				System.out.print("Departure         Seats      Booked   Available\n");
-				for (int i = 0; i < r.size(); i++) {
-					for (int j = 0; j < r.get(i).size(); j++) {
-						System.out.print(r.get(i).get(j) + "        ");
-					}
-					System.out.println();
-				}
-			}
+			ResultRenderer.stdout().table(Arrays.asList("Flightnum", "Origin", "Destination", "Departure", "Seats", "Booked", "Available"), r);
 
 		} catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1102,7 +1606,7 @@ public class AirBooking{
     protected static String getSaltString() {
         String SALTCHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890";
         StringBuilder salt = new StringBuilder();
-        Random rnd = new Random();
+        Random rnd = ThreadLocalRandom.current();
         while (salt.length() < 10) { // length of the random string.
             int index = (int) (rnd.nextFloat() * SALTCHARS.length());
             salt.append(SALTCHARS.charAt(index));
@@ -1112,15 +1616,19 @@ public class AirBooking{
     }
 
     // This method capitalizes the first letter of each word.
+    // Runs of spaces collapse to one; a blank string gives "".
     // Taken from online:
     // https://stackoverflow.com/questions/1149855/how-to-upper-case-every-first-letter-of-word-in-a-string
     public static String castString(String givenString) {
         String source = givenString;
 		StringBuffer res = new StringBuffer();
 
-		String[] strArr = source.split(" ");
+		String[] strArr = source.split("\\s+");
 		for (String str : strArr) {
-			char[] stringArray = str.trim().toCharArray();
+			if (str.isEmpty()) {
+				continue;
+			}
+			char[] stringArray = str.toCharArray();
 			stringArray[0] = Character.toUpperCase(stringArray[0]);
 			str = new String(stringArray);
 
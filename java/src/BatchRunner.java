@@ -0,0 +1,282 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs menu operations given as command lines instead of menu
+ * prompts, for example
+ *
+ *   book --flight IB903 --pid 12 --date 2017-10-23
+ *
+ * Operations come from argv (one operation) or from a file or stdin (one
+ * operation per line; blank lines and lines starting with # are skipped;
+ * values containing spaces are double-quoted). They run back to back, or
+ * on several worker threads, each with its own pooled connection.
+ *
+ * Every operation prints one JSON line with its sequence number, name,
+ * status (OK, one of the Operations.Reason values, or ERROR), latency and
+ * result rows. With several workers the lines appear in completion order.
+ * A throughput summary goes to standard error at the end so that standard
+ * output stays machine-readable.
+ *
+ */
+
+public class BatchRunner {
+	//marks the end of the input for the workers
+	private static final Command END = new Command(0, 0, null, null);
+
+	/**
+	 * One parsed operation.
+	 */
+	static final class Command {
+		final long seq;
+		final long lineNo;
+		final String op;
+		final Map<String, String> args;
+
+		Command(long seq, long lineNo, String op, Map<String, String> args) {
+			this.seq = seq;
+			this.lineNo = lineNo;
+			this.op = op;
+			this.args = args;
+		}
+	}
+
+	private final AirBooking _esql;
+	private final PrintStream _out;
+	private final int _threads;
+	private final AtomicLong _ok = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+	private final AtomicLong _errors = new AtomicLong();
+	private final AtomicLong _nanos = new AtomicLong();
+	private final Map<String, AtomicLong> _perOp = new TreeMap<String, AtomicLong>();
+	private long _elapsedNanos = 0;
+
+	/**
+	 * @param esql the database to run against
+	 * @param out where the result lines are written
+	 * @param threads number of operations in flight at once
+	 */
+	public BatchRunner(AirBooking esql, PrintStream out, int threads) {
+		this._esql = esql;
+		this._out = out;
+		this._threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Method to run a single operation given as separate words.
+	 *
+	 * @param words the operation name followed by its --name value pairs
+	 */
+	public void run(String[] words) {
+		long start = System.nanoTime();
+		try{
+			execute(parse(1, 1, words));
+		}catch (IllegalArgumentException e){
+			report(new Command(1, 1, words[0], null), "INVALID", 0, null, e.getMessage());
+		}//end try
+		this._elapsedNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Method to run every operation of the input.
+	 *
+	 * @param input one operation per line
+	 * @throws java.io.IOException when the input cannot be read
+	 * @throws java.lang.InterruptedException when interrupted while waiting for workers
+	 */
+	public void run(Reader input) throws IOException, InterruptedException {
+		final BlockingQueue<Command> queue = new ArrayBlockingQueue<Command>(this._threads * 64);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < this._threads; i++) {
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					try{
+						Command c;
+						while ((c = queue.take()) != END) {
+							execute(c);
+						}
+					}catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}//end try
+				}
+			}, "batch-worker-" + i);
+			workers.add(t);
+		}
+		long start = System.nanoTime();
+		for (Thread t : workers) {
+			t.start();
+		}
+		try{
+			BufferedReader br = new BufferedReader(input);
+			String line;
+			long lineNo = 0;
+			long seq = 0;
+			while ((line = br.readLine()) != null) {
+				lineNo++;
+				String trimmed = line.trim();
+				if (trimmed.length() == 0 || trimmed.startsWith("#")) {
+					continue;
+				}
+				seq++;
+				Command c;
+				try{
+					c = parse(seq, lineNo, split(trimmed));
+				}catch (IllegalArgumentException e){
+					report(new Command(seq, lineNo, trimmed.split("\\s+")[0], null), "INVALID", 0, null, e.getMessage());
+					continue;
+				}//end try
+				queue.put(c);
+			}
+		}finally{
+			for (int i = 0; i < workers.size(); i++) {
+				queue.put(END);
+			}
+			for (Thread t : workers) {
+				t.join();
+			}
+			this._elapsedNanos = System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Splits a line into words, keeping double-quoted values together.
+	 */
+	static String[] split(String line) {
+		List<String> words = new ArrayList<String>();
+		StringBuilder word = new StringBuilder();
+		boolean quoted = false;
+		boolean inWord = false;
+		for (int i = 0; i < line.length(); i++) {
+			char ch = line.charAt(i);
+			if (ch == '"') {
+				quoted = !quoted;
+				inWord = true;
+			}
+			else if (Character.isWhitespace(ch) && !quoted) {
+				if (inWord) {
+					words.add(word.toString());
+					word.setLength(0);
+					inWord = false;
+				}
+			}
+			else {
+				word.append(ch);
+				inWord = true;
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("unterminated quote");
+		}
+		if (inWord) {
+			words.add(word.toString());
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static Command parse(long seq, long lineNo, String[] words) {
+		if (!Operations.isOperation(words[0])) {
+			throw new IllegalArgumentException("unknown operation " + words[0]);
+		}
+		Map<String, String> args = new HashMap<String, String>();
+		for (int i = 1; i < words.length; i++) {
+			if (!words[i].startsWith("--") || i + 1 >= words.length) {
+				throw new IllegalArgumentException("expected --name value at " + words[i]);
+			}
+			args.put(words[i].substring(2), words[++i]);
+		}
+		return new Command(seq, lineNo, words[0], args);
+	}
+
+	private void execute(Command c) {
+		long start = System.nanoTime();
+		try{
+			QueryResult result = this._esql.getOperations().invoke(c.op, c.args);
+			report(c, "OK", System.nanoTime() - start, result, null);
+		}catch (Operations.Rejected e){
+			report(c, e.getReason().name(), System.nanoTime() - start, null, e.getMessage());
+		}catch (SQLException e){
+			report(c, "ERROR", System.nanoTime() - start, null, e.getMessage());
+		}catch (RuntimeException e){
+			report(c, "ERROR", System.nanoTime() - start, null, e.toString());
+		}//end try
+	}
+
+	private void report(Command c, String status, long nanos, QueryResult result, String message) {
+		if (status.equals("OK")) {
+			this._ok.incrementAndGet();
+		}
+		else if (status.equals("ERROR")) {
+			this._errors.incrementAndGet();
+		}
+		else {
+			this._rejected.incrementAndGet();
+		}
+		this._nanos.addAndGet(nanos);
+		synchronized (this._perOp) {
+			AtomicLong n = this._perOp.get(c.op);
+			if (n == null) {
+				n = new AtomicLong();
+				this._perOp.put(c.op, n);
+			}
+			n.incrementAndGet();
+		}
+
+		StringBuilder line = new StringBuilder(128);
+		line.append("{\"seq\":").append(c.seq).append(",\"line\":").append(c.lineNo).append(",\"op\":");
+		Json.quote(line, c.op);
+		line.append(",\"status\":\"").append(status).append("\",\"micros\":").append(nanos / 1000);
+		if (result != null) {
+			line.append(',');
+			Json.result(line, result);
+		}
+		if (message != null) {
+			line.append(",\"message\":");
+			Json.quote(line, message);
+		}
+		line.append('}');
+		this._out.println(line);
+	}
+
+	/**
+	 * Method to summarize the run.
+	 *
+	 * @return a one-line summary with counts, mean latency and throughput
+	 */
+	public String stats() {
+		long total = this._ok.get() + this._rejected.get() + this._errors.get();
+		StringBuilder perOp = new StringBuilder();
+		synchronized (this._perOp) {
+			for (Map.Entry<String, AtomicLong> e : this._perOp.entrySet()) {
+				perOp.append(perOp.length() == 0 ? "" : " ").append(e.getKey()).append('=').append(e.getValue().get());
+			}
+		}
+		return String.format("batch[ops=%d ok=%d rejected=%d errors=%d threads=%d elapsed=%.1fms avg=%.3fms throughput=%.1f ops/s] {%s}",
+			total, this._ok.get(), this._rejected.get(), this._errors.get(), this._threads,
+			this._elapsedNanos / 1e6, total == 0 ? 0.0 : this._nanos.get() / 1e6 / total,
+			this._elapsedNanos == 0 ? 0.0 : total / (this._elapsedNanos / 1e9), perOp);
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class hands out unique 10-character booking references without
+ * asking the database whether they are taken.
+ *
+ * Each process reserves blocks of BLOCK_SIZE consecutive numbers from the
+ * bookRefBlockSeq sequence, one round trip per block, and then counts
+ * through its block with an atomic increment. Every number is pushed
+ * through a fixed, reversible permutation of the 36^10 possible references
+ * (a four round Feistel network on two base-36^5 halves), so consecutive
+ * bookings get unrelated-looking references while distinct numbers always
+ * give distinct references. The references use the same alphabet as
+ * getSaltString.
+ *
+ * BLOCK_SIZE and the round keys are part of the reference format: every
+ * process writing to the same database must use the same values.
+ *
+ */
+
+public class BookRefAllocator {
+	public static final int BLOCK_SIZE = 1000;
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ1234567890".toCharArray();
+	//36^5, the size of each Feistel half
+	private static final int HALF = 60466176;
+	private static final long SPACE = (long) HALF * HALF;
+	private static final int[] KEYS = { 0x5bd1e995, 0x27d4eb2f, 0x165667b1, 0x61c88647 };
+
+	/**
+	 * Source of block numbers; each call must return a number never
+	 * returned before, in this or any other process.
+	 */
+	public interface BlockSource {
+		long nextBlock() throws SQLException;
+	}
+
+	/**
+	 * Range of numbers owned by this allocator.
+	 */
+	private static final class Block {
+		final long end;
+		final AtomicLong next;
+
+		Block(long start, long end) {
+			this.end = end;
+			this.next = new AtomicLong(start);
+		}
+	}
+
+	private final BlockSource _source;
+	private volatile Block _current = new Block(0, 0);
+	private final AtomicLong _blocks = new AtomicLong();
+
+	public BookRefAllocator(BlockSource source) {
+		this._source = source;
+	}
+
+	/**
+	 * Creates an allocator that reserves its blocks from bookRefBlockSeq.
+	 *
+	 * @param pool the pool used for the occasional block reservation
+	 * @return the allocator
+	 */
+	public static BookRefAllocator fromSequence(final ConnectionPool pool) {
+		return new BookRefAllocator(new BlockSource() {
+			public long nextBlock() throws SQLException {
+				try (PooledConnection conn = pool.borrow()) {
+					PreparedStatement stmt = conn.prepare("SELECT nextval('bookRefBlockSeq')");
+					ResultSet rs = stmt.executeQuery();
+					try{
+						rs.next();
+						return rs.getLong(1);
+					}finally{
+						rs.close();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Method to allocate the next booking reference. Thread-safe; only the
+	 * thread that exhausts a block pays for reserving the next one.
+	 *
+	 * @return a new, unique 10-character reference
+	 * @throws java.sql.SQLException when a new block cannot be reserved
+	 */
+	public String next() throws SQLException {
+		while (true) {
+			Block b = this._current;
+			long n = b.next.getAndIncrement();
+			if (n < b.end) {
+				return encode(n);
+			}
+			refill(b);
+		}
+	}
+
+	private synchronized void refill(Block exhausted) throws SQLException {
+		if (this._current != exhausted) {
+			// another thread already replaced it
+			return;
+		}
+		long block = this._source.nextBlock();
+		long start = block * BLOCK_SIZE;
+		if (block < 0 || start + BLOCK_SIZE > SPACE) {
+			throw new SQLException("bookRef space exhausted at block " + block);
+		}
+		this._blocks.incrementAndGet();
+		this._current = new Block(start, start + BLOCK_SIZE);
+	}
+
+	public long getBlocksReserved() {
+		return this._blocks.get();
+	}
+
+	/**
+	 * Method to map a number in [0, 36^10) to its reference.
+	 *
+	 * @param n the number
+	 * @return the 10-character reference
+	 */
+	public static String encode(long n) {
+		int left = (int) (n / HALF);
+		int right = (int) (n % HALF);
+		for (int k : KEYS) {
+			int t = right;
+			right = (int) ((left + (long) round(right, k)) % HALF);
+			left = t;
+		}
+		char[] ref = new char[10];
+		for (int i = 4; i >= 0; i--) {
+			ref[i] = ALPHABET[left % 36];
+			left /= 36;
+			ref[i + 5] = ALPHABET[right % 36];
+			right /= 36;
+		}
+		return new String(ref);
+	}
+
+	/**
+	 * Method to recover the number a reference was made from, the inverse of
+	 * encode.
+	 *
+	 * @param ref a reference produced by encode
+	 * @return the number it encodes
+	 */
+	public static long decode(String ref) {
+		if (ref.length() != 10) {
+			throw new IllegalArgumentException("bookRef must be 10 characters: " + ref);
+		}
+		int left = 0;
+		int right = 0;
+		for (int i = 0; i < 5; i++) {
+			left = left * 36 + digit(ref.charAt(i));
+			right = right * 36 + digit(ref.charAt(i + 5));
+		}
+		for (int r = KEYS.length - 1; r >= 0; r--) {
+			int t = left;
+			left = (int) Math.floorMod(right - (long) round(t, KEYS[r]), (long) HALF);
+			right = t;
+		}
+		return (long) left * HALF + right;
+	}
+
+	private static int digit(char ch) {
+		if (ch >= 'A' && ch <= 'Z') return ch - 'A';
+		if (ch >= '1' && ch <= '9') return 26 + ch - '1';
+		if (ch == '0') return 35;
+		throw new IllegalArgumentException("Not a bookRef character: " + ch);
+	}
+
+	/**
+	 * Feistel round function: a 32-bit integer mix of the half and the round
+	 * key, reduced into [0, 36^5).
+	 */
+	private static int round(int half, int key) {
+		int h = half ^ key;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return (int) ((h & 0xffffffffL) % HALF);
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Array;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class ingests bookings from a feed in the bookings.csv layout
+ * (bookRef,departure,flightNum,pID). Rows are processed in chunks: each
+ * chunk is validated with four set-based lookups (flights, passengers,
+ * booking references and already booked seats) and the survivors are
+ * inserted with one JDBC batch, which the driver rewrites into multi-row
+ * INSERTs. Each chunk is its own transaction.
+ *
+ * A row that fails is reported in the reject file with its line number and
+ * the rest of the chunk still goes in. If the batch itself fails, e.g.
+ * because a concurrent session booked the same seat in between or the
+ * reserveSeat trigger found a flight full, the chunk is replayed row by
+ * row under savepoints to find the offending rows.
+ *
+ */
+
+public class BookingIngest {
+	private static final String INSERT_BOOKING =
+		"INSERT INTO Booking (bookRef, departure, flightNum, pID) VALUES (?, ?, ?, ?)";
+	private static final String FIND_FLIGHTS =
+		"SELECT flightNum FROM Flight WHERE flightNum = ANY (CAST(? AS bpchar[]))";
+	private static final String FIND_PASSENGERS =
+		"SELECT pID FROM Passenger WHERE pID = ANY (CAST(? AS int4[]))";
+	private static final String FIND_BOOKREFS =
+		"SELECT bookRef FROM Booking WHERE bookRef = ANY (CAST(? AS bpchar[]))";
+	private static final String FIND_BOOKED =
+		"SELECT B.departure, B.flightNum, B.pID FROM Booking B, "
+		+ "unnest(CAST(? AS date[]), CAST(? AS bpchar[]), CAST(? AS int4[])) AS K(d, f, p) "
+		+ "WHERE B.departure = K.d AND B.flightNum = K.f AND B.pID = K.p";
+
+	/**
+	 * One parsed input row.
+	 */
+	static class Row {
+		final long lineNo;
+		final String line;
+		String bookRef;
+		LocalDate departure;
+		String flightNum;
+		int pID;
+
+		Row(long lineNo, String line) {
+			this.lineNo = lineNo;
+			this.line = line;
+		}
+
+		String seatKey() {
+			return departure + "|" + flightNum + "|" + pID;
+		}
+	}
+
+	private final AirBooking _esql;
+	private final int _chunkSize;
+
+	//statistics of the last run
+	private long _read = 0;
+	private long _inserted = 0;
+	private long _rejected = 0;
+	private long _chunks = 0;
+	private long _replayedChunks = 0;
+	private long _nanos = 0;
+
+	/**
+	 * @param esql the database to ingest into
+	 * @param chunkSize rows validated and inserted per transaction
+	 */
+	public BookingIngest(AirBooking esql, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this._esql = esql;
+		this._chunkSize = chunkSize;
+	}
+
+	/**
+	 * Method to ingest every row of the input.
+	 *
+	 * @param input the CSV rows, without a header line
+	 * @param rejects where rejected rows are written
+	 * @throws java.sql.SQLException when a chunk cannot be written at all
+	 * @throws java.io.IOException when the input or reject file fails
+	 */
+	public void run(Reader input, Writer rejects) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (PooledConnection conn = this._esql.getPool().borrow()) {
+			Connection c = conn.getConnection();
+			c.setAutoCommit(false);
+			try{
+				BufferedReader br = new BufferedReader(input);
+				List<Row> chunk = new ArrayList<Row>(this._chunkSize);
+				String line;
+				long lineNo = 0;
+				while ((line = br.readLine()) != null) {
+					lineNo++;
+					if (line.trim().length() == 0) {
+						continue;
+					}
+					this._read++;
+					Row row = new Row(lineNo, line);
+					String reason = parse(row);
+					if (reason != null) {
+						reject(rejects, row, reason);
+						continue;
+					}
+					chunk.add(row);
+					if (chunk.size() == this._chunkSize) {
+						ingest(conn, chunk, rejects);
+						chunk.clear();
+					}
+				}//end while
+				if (!chunk.isEmpty()) {
+					ingest(conn, chunk, rejects);
+				}
+			}finally{
+				c.rollback();
+				c.setAutoCommit(true);
+			}
+		}
+		this._nanos = System.nanoTime() - start;
+	}
+
+	private static String parse(Row row) {
+		String[] f = row.line.split(",", -1);
+		if (f.length != 4) {
+			return "expected 4 fields but found " + f.length;
+		}
+		row.bookRef = f[0].trim();
+		if (row.bookRef.length() != 10) {
+			return "bookRef must be 10 characters";
+		}
+		row.departure = Csv.parseUsDate(f[1]);
+		if (row.departure == null) {
+			return "departure is not a valid M/D/YYYY date";
+		}
+		row.flightNum = f[2].trim();
+		if (row.flightNum.length() == 0 || row.flightNum.length() > 8) {
+			return "flightNum must be 1 to 8 characters";
+		}
+		try{
+			row.pID = Integer.parseInt(f[3].trim());
+		}catch (NumberFormatException e){
+			return "pID is not a number";
+		}
+		return null;
+	}
+
+	/**
+	 * Validates one chunk against the database in bulk, then inserts the
+	 * rows that passed and commits.
+	 */
+	private void ingest(PooledConnection conn, List<Row> chunk, Writer rejects) throws SQLException, IOException {
+		this._chunks++;
+		Connection c = conn.getConnection();
+		int n = chunk.size();
+		String[] flightNums = new String[n];
+		Integer[] pIDs = new Integer[n];
+		String[] bookRefs = new String[n];
+		Date[] departures = new Date[n];
+		for (int i = 0; i < n; i++) {
+			Row row = chunk.get(i);
+			flightNums[i] = row.flightNum;
+			pIDs[i] = row.pID;
+			bookRefs[i] = row.bookRef;
+			departures[i] = Date.valueOf(row.departure);
+		}
+		Array flightArray = c.createArrayOf("text", flightNums);
+		Array pIDArray = c.createArrayOf("int4", pIDs);
+
+		Set<String> flights = new HashSet<String>();
+		PreparedStatement stmt = conn.prepare(FIND_FLIGHTS);
+		stmt.setArray(1, flightArray);
+		ResultSet rs = stmt.executeQuery();
+		while (rs.next()) {
+			flights.add(rs.getString(1).trim());
+		}//end while
+		rs.close();
+
+		Set<Integer> passengers = new HashSet<Integer>();
+		stmt = conn.prepare(FIND_PASSENGERS);
+		stmt.setArray(1, pIDArray);
+		rs = stmt.executeQuery();
+		while (rs.next()) {
+			passengers.add(rs.getInt(1));
+		}//end while
+		rs.close();
+
+		Set<String> takenRefs = new HashSet<String>();
+		stmt = conn.prepare(FIND_BOOKREFS);
+		stmt.setArray(1, c.createArrayOf("text", bookRefs));
+		rs = stmt.executeQuery();
+		while (rs.next()) {
+			takenRefs.add(rs.getString(1).trim());
+		}//end while
+		rs.close();
+
+		Set<String> bookedSeats = new HashSet<String>();
+		stmt = conn.prepare(FIND_BOOKED);
+		stmt.setArray(1, c.createArrayOf("date", departures));
+		stmt.setArray(2, flightArray);
+		stmt.setArray(3, pIDArray);
+		rs = stmt.executeQuery();
+		while (rs.next()) {
+			bookedSeats.add(rs.getDate(1).toLocalDate() + "|" + rs.getString(2).trim() + "|" + rs.getInt(3));
+		}//end while
+		rs.close();
+
+		// the rows of this chunk seen so far, to catch duplicates within the feed
+		Map<String, Long> chunkRefs = new HashMap<String, Long>();
+		Map<String, Long> chunkSeats = new HashMap<String, Long>();
+		List<Row> accepted = new ArrayList<Row>(n);
+		for (Row row : chunk) {
+			String seat = row.seatKey();
+			String reason = null;
+			if (!flights.contains(row.flightNum)) {
+				reason = "flightNum " + row.flightNum + " does not exist";
+			}
+			else if (!passengers.contains(row.pID)) {
+				reason = "pID " + row.pID + " does not exist";
+			}
+			else if (takenRefs.contains(row.bookRef)) {
+				reason = "bookRef " + row.bookRef + " already exists";
+			}
+			else if (chunkRefs.containsKey(row.bookRef)) {
+				reason = "bookRef " + row.bookRef + " duplicates line " + chunkRefs.get(row.bookRef);
+			}
+			else if (bookedSeats.contains(seat)) {
+				reason = "violates UNIQUE(departure, flightNum, pID): passenger already booked on this flight and date";
+			}
+			else if (chunkSeats.containsKey(seat)) {
+				reason = "violates UNIQUE(departure, flightNum, pID): duplicates line " + chunkSeats.get(seat);
+			}
+			if (reason != null) {
+				reject(rejects, row, reason);
+				continue;
+			}
+			chunkRefs.put(row.bookRef, row.lineNo);
+			chunkSeats.put(seat, row.lineNo);
+			accepted.add(row);
+		}
+		if (accepted.isEmpty()) {
+			return;
+		}
+
+		PreparedStatement insert = conn.prepare(INSERT_BOOKING);
+		try{
+			for (Row row : accepted) {
+				bindBooking(insert, row);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			c.commit();
+			this._inserted += accepted.size();
+		}catch (BatchUpdateException e){
+			// something changed since the checks: find the failing rows one by one.
+			insert.clearBatch();
+			c.rollback();
+			this._replayedChunks++;
+			replay(conn, accepted, rejects);
+		}
+	}
+
+	/**
+	 * Inserts the rows one at a time, each under its own savepoint, so a
+	 * failing row is rolled back and reported without losing the others.
+	 */
+	private void replay(PooledConnection conn, List<Row> rows, Writer rejects) throws SQLException, IOException {
+		Connection c = conn.getConnection();
+		PreparedStatement insert = conn.prepare(INSERT_BOOKING);
+		for (Row row : rows) {
+			Savepoint sp = c.setSavepoint();
+			try{
+				bindBooking(insert, row);
+				insert.executeUpdate();
+				c.releaseSavepoint(sp);
+				this._inserted++;
+			}catch (SQLException e){
+				c.rollback(sp);
+				String reason = e.getMessage();
+				if ("23505".equals(e.getSQLState())) {
+					reason = "violates a unique constraint: " + reason;
+				}
+				else if ("23514".equals(e.getSQLState())) {
+					reason = "no seat left: " + reason;
+				}
+				reject(rejects, row, reason);
+			}//end try
+		}
+		c.commit();
+	}
+
+	private static void bindBooking(PreparedStatement insert, Row row) throws SQLException {
+		insert.setString(1, row.bookRef);
+		insert.setDate(2, Date.valueOf(row.departure));
+		insert.setString(3, row.flightNum);
+		insert.setInt(4, row.pID);
+	}
+
+	private void reject(Writer rejects, Row row, String reason) throws IOException {
+		this._rejected++;
+		Csv.writeReject(rejects, row.lineNo, reason, row.line);
+	}
+
+	/**
+	 * Method to summarize the last run.
+	 *
+	 * @return a human readable summary
+	 */
+	public String stats() {
+		double sec = this._nanos / 1e9;
+		return String.format("Read %d rows in %.2f s (%.0f rows/s)%n"
+			+ "  inserted %d, rejected %d, %d chunks of up to %d rows, %d replayed row by row",
+			this._read, sec, sec == 0 ? 0.0 : this._read / sec,
+			this._inserted, this._rejected, this._chunks, this._chunkSize, this._replayedChunks);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the monthly partitions of Booking (see
+ * sql/migrations/003_partition_booking.sql) ahead of the calendar, and
+ * optionally archives the months that are no longer needed, by calling the
+ * createBookingPartitions and archiveBookingPartitions functions.
+ *
+ * Bookings for a month without a partition are not lost: they wait in
+ * booking_default and are moved when the month's partition is created.
+ * Keeping partitions created ahead only keeps that default partition small.
+ *
+ */
+
+public class BookingPartitions {
+	//SQLSTATE when the functions are missing, i.e. the migration was not applied
+	private static final String UNDEFINED_FUNCTION = "42883";
+
+	private final AirBooking _esql;
+	private ScheduledExecutorService _scheduler = null;
+
+	public BookingPartitions(AirBooking esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to create the partitions of every month from the current one
+	 * through the given number of months ahead.
+	 *
+	 * @param monthsAhead how many months after the current one to cover
+	 * @return the number of partitions created
+	 * @throws java.sql.SQLException when they cannot be created
+	 */
+	public int create(int monthsAhead) throws SQLException {
+		LocalDate today = LocalDate.now();
+		return Integer.parseInt(this._esql.executeQueryForResult("SELECT createBookingPartitions(?, ?)",
+			Date.valueOf(today), Date.valueOf(today.plusMonths(monthsAhead))).get(0, 0));
+	}
+
+	/**
+	 * Method to detach the partitions of every month that ended before a
+	 * date and move them to the archive schema. Bookings of those months
+	 * are no longer seen by the application.
+	 *
+	 * @param before months ending on or before this date are archived
+	 * @return the number of partitions archived
+	 * @throws java.sql.SQLException when they cannot be archived
+	 */
+	public int archive(Date before) throws SQLException {
+		return Integer.parseInt(this._esql.executeQueryForResult("SELECT archiveBookingPartitions(?)", before).get(0, 0));
+	}
+
+	/**
+	 * Method to maintain the partitions now and then once a day in the
+	 * background. Nothing is done when Booking is not partitioned.
+	 *
+	 * @param monthsAhead months after the current one that must have a partition
+	 * @param retainMonths full months kept before the current one, or 0 to
+	 *        never archive
+	 */
+	public void start(final int monthsAhead, final int retainMonths) {
+		this._scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "booking-partitions");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try{
+					create(monthsAhead);
+					if (retainMonths > 0) {
+						int archived = archive(Date.valueOf(LocalDate.now().withDayOfMonth(1).minusMonths(retainMonths)));
+						if (archived > 0) {
+							System.err.println("Archived " + archived + " Booking partitions");
+						}
+					}
+				}catch (SQLException e){
+					if (UNDEFINED_FUNCTION.equals(e.getSQLState())) {
+						// Booking is not partitioned, there is nothing to maintain
+						stop();
+						return;
+					}
+					System.err.println("Warning - Booking partition maintenance failed: " + e.getMessage());
+				}//end try
+			}
+		}, 0, 1, TimeUnit.DAYS);
+	}
+
+	public void stop() {
+		if (this._scheduler != null) {
+			this._scheduler.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A query result stored column by column with each column in its native
+ * type. Integer columns (seats, duration, score, pID, ...) are read with
+ * getInt into an int[] and never become strings; dates, numerics and
+ * floating point values are read with their own getters. Text columns are
+ * kept as strings. Nulls are tracked in a bit set per column.
+ *
+ */
+
+public class ColumnarResult {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final String[] _names;
+	private final int[] _types;
+	private final Object[] _columns;
+	private final BitSet[] _nulls;
+	private int _rowCount = 0;
+	private int _capacity = INITIAL_CAPACITY;
+
+	/**
+	 * Reads every remaining row of a result set.
+	 *
+	 * @param rs the result set, positioned before its first row
+	 * @return the rows in columnar form
+	 * @throws java.sql.SQLException when a column cannot be read
+	 */
+	public static ColumnarResult read(ResultSet rs) throws SQLException {
+		ColumnarResult result = new ColumnarResult(rs.getMetaData());
+		while (rs.next()) {
+			result.append(rs);
+		}//end while
+		return result;
+	}
+
+	private ColumnarResult(ResultSetMetaData rsmd) throws SQLException {
+		int numCol = rsmd.getColumnCount();
+		this._names = new String[numCol];
+		this._types = new int[numCol];
+		this._columns = new Object[numCol];
+		this._nulls = new BitSet[numCol];
+		for (int i = 0; i < numCol; i++) {
+			this._names[i] = rsmd.getColumnLabel(i + 1);
+			this._types[i] = storageType(rsmd.getColumnType(i + 1));
+			this._columns[i] = allocate(this._types[i], INITIAL_CAPACITY);
+			this._nulls[i] = new BitSet();
+		}
+	}
+
+	/**
+	 * Maps a JDBC type to the type the column is stored as.
+	 */
+	private static int storageType(int jdbcType) {
+		switch (jdbcType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				return Types.INTEGER;
+			case Types.BIGINT:
+				return Types.BIGINT;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return Types.DOUBLE;
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				return Types.NUMERIC;
+			case Types.DATE:
+				return Types.DATE;
+			default:
+				return Types.VARCHAR;
+		}
+	}
+
+	private static Object allocate(int type, int capacity) {
+		switch (type) {
+			case Types.INTEGER: return new int[capacity];
+			case Types.BIGINT: return new long[capacity];
+			case Types.DOUBLE: return new double[capacity];
+			case Types.NUMERIC: return new BigDecimal[capacity];
+			case Types.DATE: return new Date[capacity];
+			default: return new String[capacity];
+		}
+	}
+
+	private static Object grow(Object column, int capacity) {
+		if (column instanceof int[]) return Arrays.copyOf((int[]) column, capacity);
+		if (column instanceof long[]) return Arrays.copyOf((long[]) column, capacity);
+		if (column instanceof double[]) return Arrays.copyOf((double[]) column, capacity);
+		return Arrays.copyOf((Object[]) column, capacity);
+	}
+
+	private void append(ResultSet rs) throws SQLException {
+		if (_rowCount == _capacity) {
+			_capacity *= 2;
+			for (int i = 0; i < _columns.length; i++) {
+				_columns[i] = grow(_columns[i], _capacity);
+			}
+		}
+		int row = _rowCount;
+		for (int i = 0; i < _columns.length; i++) {
+			int col = i + 1;
+			switch (_types[i]) {
+				case Types.INTEGER:
+					((int[]) _columns[i])[row] = rs.getInt(col);
+					break;
+				case Types.BIGINT:
+					((long[]) _columns[i])[row] = rs.getLong(col);
+					break;
+				case Types.DOUBLE:
+					((double[]) _columns[i])[row] = rs.getDouble(col);
+					break;
+				case Types.NUMERIC:
+					((BigDecimal[]) _columns[i])[row] = rs.getBigDecimal(col);
+					break;
+				case Types.DATE:
+					((Date[]) _columns[i])[row] = rs.getDate(col);
+					break;
+				default:
+					((String[]) _columns[i])[row] = rs.getString(col);
+					break;
+			}
+			if (rs.wasNull()) {
+				_nulls[i].set(row);
+			}
+		}
+		_rowCount++;
+	}
+
+	public int getRowCount() {
+		return _rowCount;
+	}
+
+	public int getColumnCount() {
+		return _names.length;
+	}
+
+	public String getColumnName(int column) {
+		return _names[column];
+	}
+
+	/**
+	 * Method to find a column by its label, ignoring case.
+	 *
+	 * @param name the column label
+	 * @return the zero based column index
+	 */
+	public int findColumn(String name) {
+		for (int i = 0; i < _names.length; i++) {
+			if (_names[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No column named " + name);
+	}
+
+	public boolean isNull(int row, int column) {
+		return _nulls[column].get(row);
+	}
+
+	public int getInt(int row, int column) {
+		return ((int[]) _columns[column])[row];
+	}
+
+	public long getLong(int row, int column) {
+		Object c = _columns[column];
+		return c instanceof int[] ? ((int[]) c)[row] : ((long[]) c)[row];
+	}
+
+	public double getDouble(int row, int column) {
+		Object c = _columns[column];
+		if (c instanceof BigDecimal[]) {
+			BigDecimal v = ((BigDecimal[]) c)[row];
+			return v == null ? 0.0 : v.doubleValue();
+		}
+		return c instanceof double[] ? ((double[]) c)[row] : getLong(row, column);
+	}
+
+	public BigDecimal getBigDecimal(int row, int column) {
+		return ((BigDecimal[]) _columns[column])[row];
+	}
+
+	public Date getDate(int row, int column) {
+		return ((Date[]) _columns[column])[row];
+	}
+
+	/**
+	 * Method to get a value as text, for display. Text columns are returned
+	 * as stored; other columns are formatted on demand.
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the value as a string, or null for SQL NULL
+	 */
+	public String getString(int row, int column) {
+		if (isNull(row, column)) {
+			return null;
+		}
+		Object c = _columns[column];
+		if (c instanceof int[]) return Integer.toString(((int[]) c)[row]);
+		if (c instanceof long[]) return Long.toString(((long[]) c)[row]);
+		if (c instanceof double[]) return Double.toString(((double[]) c)[row]);
+		Object v = ((Object[]) c)[row];
+		return v.toString();
+	}
+
+	/**
+	 * Method to get direct access to an integer column's storage. Only the
+	 * first getRowCount() entries are meaningful.
+	 *
+	 * @param column the column index
+	 * @return the backing array
+	 */
+	public int[] intColumn(int column) {
+		return (int[]) _columns[column];
+	}
+}
@@ -0,0 +1,462 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections.
+ * Connections are validated when borrowed, idle connections above the
+ * minimum size are evicted after a timeout, and connections held longer
+ * than the leak threshold are reported together with the borrowing stack.
+ *
+ */
+
+public class ConnectionPool {
+	private final String _url;
+	private final String _user;
+	private final String _passwd;
+	private final int _minSize;
+	private final int _maxSize;
+	private final long _borrowTimeoutMillis;
+	private final long _idleTimeoutMillis;
+	private final long _leakThresholdMillis;
+	private final int _validationTimeoutSeconds;
+	private final int _statementCacheSize;
+
+	//guards every field below
+	private final ReentrantLock _lock = new ReentrantLock();
+	private final Condition _available = _lock.newCondition();
+	private final ArrayDeque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+	private final List<PooledConnection> _active = new ArrayList<PooledConnection>();
+	private int _total = 0;
+	private int _waiting = 0;
+	private boolean _closed = false;
+
+	//saturation metrics
+	private long _borrowCount = 0;
+	private long _waitCount = 0;
+	private long _totalWaitNanos = 0;
+	private long _maxWaitNanos = 0;
+	private long _timeoutCount = 0;
+	private long _createdCount = 0;
+	private long _evictedCount = 0;
+	private long _invalidCount = 0;
+	private long _leakCount = 0;
+	private int _peakActive = 0;
+
+	private final ScheduledExecutorService _housekeeper;
+
+	/**
+	 * Creates the pool and opens the minimum number of connections.
+	 *
+	 * @param url the JDBC connection URL
+	 * @param user the database user
+	 * @param passwd the database password
+	 * @param minSize connections kept open even when idle
+	 * @param maxSize upper bound on open connections
+	 * @param borrowTimeoutMillis how long a borrower waits before failing
+	 * @param idleTimeoutMillis idle time after which surplus connections are closed
+	 * @param leakThresholdMillis loan time after which a leak is reported, 0 disables
+	 * @throws java.sql.SQLException when the initial connections cannot be opened
+	 */
+	public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize,
+			long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + " max=" + maxSize);
+		}
+		this._url = url;
+		this._user = user;
+		this._passwd = passwd;
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._borrowTimeoutMillis = borrowTimeoutMillis;
+		this._idleTimeoutMillis = idleTimeoutMillis;
+		this._leakThresholdMillis = leakThresholdMillis;
+		this._validationTimeoutSeconds = 2;
+		this._statementCacheSize = Integer.getInteger("airbooking.statementCache.size", 64);
+
+		for (int i = 0; i < minSize; i++) {
+			PooledConnection pc = open();
+			_lock.lock();
+			try{
+				_total++;
+				_idle.push(pc);
+			}finally{
+				_lock.unlock();
+			}
+		}
+
+		this._housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "connection-pool-housekeeper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		long period = Math.max(1000L, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : idleTimeoutMillis) / 2);
+		this._housekeeper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				housekeep();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Method to borrow a connection. Idle connections are reused most
+	 * recently returned first and validated before being handed out; a new
+	 * physical connection is opened only while the pool is below its
+	 * maximum size. Otherwise the caller waits up to the borrow timeout.
+	 *
+	 * @return a validated connection that must be closed to return it
+	 * @throws java.sql.SQLTimeoutException when no connection frees up within the borrow timeout
+	 * @throws java.sql.SQLException when the pool is closed
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(_borrowTimeoutMillis);
+		boolean waited = false;
+		while (true) {
+			PooledConnection candidate = null;
+			boolean create = false;
+			_lock.lock();
+			try{
+				while (true) {
+					if (_closed) {
+						throw new SQLException("Connection pool is closed");
+					}
+					if (!_idle.isEmpty()) {
+						candidate = _idle.pop();
+						break;
+					}
+					if (_total < _maxSize) {
+						_total++;
+						create = true;
+						break;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						_timeoutCount++;
+						throw new SQLTimeoutException("Timed out after " + _borrowTimeoutMillis
+							+ " ms waiting for a database connection (" + _active.size() + " active, max " + _maxSize + ")");
+					}
+					waited = true;
+					_waiting++;
+					try{
+						remaining = _available.awaitNanos(remaining);
+					}catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection");
+					}finally{
+						_waiting--;
+					}
+				}//end while
+			}finally{
+				_lock.unlock();
+			}
+
+			if (create) {
+				try{
+					candidate = open();
+				}catch (SQLException e){
+					_lock.lock();
+					try{
+						_total--;
+						_available.signal();
+					}finally{
+						_lock.unlock();
+					}
+					throw e;
+				}
+			}
+			else if (!isValid(candidate)) {
+				// drop the broken connection and try again.
+				candidate.closePhysical();
+				_lock.lock();
+				try{
+					_total--;
+					_invalidCount++;
+					_available.signal();
+				}finally{
+					_lock.unlock();
+				}
+				continue;
+			}
+
+			long now = System.nanoTime();
+			_lock.lock();
+			try{
+				candidate.onLoan = true;
+				candidate.borrowedAt = now;
+				candidate.leakReported = false;
+				candidate.borrowSite = _leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+				_active.add(candidate);
+				_borrowCount++;
+				if (_active.size() > _peakActive) {
+					_peakActive = _active.size();
+				}
+				if (waited) {
+					long w = now - start;
+					_waitCount++;
+					_totalWaitNanos += w;
+					if (w > _maxWaitNanos) {
+						_maxWaitNanos = w;
+					}
+				}
+			}finally{
+				_lock.unlock();
+			}
+			return candidate;
+		}
+	}
+
+	/**
+	 * Method to return a borrowed connection. Connections left in a failed
+	 * or closed state are discarded instead of being pooled again. Closing
+	 * a connection that is not on loan does nothing.
+	 *
+	 * @param pc the connection being returned
+	 */
+	void release(PooledConnection pc) {
+		// take it off loan first, so a second close() never resets it
+		_lock.lock();
+		try{
+			if (!pc.onLoan) {
+				return;
+			}
+			pc.onLoan = false;
+			pc.borrowSite = null;
+			_active.remove(pc);
+		}finally{
+			_lock.unlock();
+		}
+
+		boolean discard = false;
+		try{
+			Connection c = pc.getConnection();
+			if (c.isClosed()) {
+				discard = true;
+			}
+			else if (!c.getAutoCommit()) {
+				// never hand out a connection with an open transaction.
+				c.rollback();
+				c.setAutoCommit(true);
+			}
+		}catch (SQLException e){
+			discard = true;
+		}//end try
+
+		_lock.lock();
+		try{
+			if (discard || _closed) {
+				_total--;
+			}
+			else {
+				pc.lastReturned = System.nanoTime();
+				_idle.push(pc);
+			}
+			_available.signal();
+		}finally{
+			_lock.unlock();
+		}
+		if (discard || _closed) {
+			pc.closePhysical();
+		}
+	}
+
+	/**
+	 * Method to close idle connections and stop handing out new ones.
+	 * Connections still on loan are closed as they are returned.
+	 */
+	public void close() {
+		List<PooledConnection> toClose = new ArrayList<PooledConnection>();
+		_lock.lock();
+		try{
+			_closed = true;
+			toClose.addAll(_idle);
+			_total -= _idle.size();
+			_idle.clear();
+			_available.signalAll();
+		}finally{
+			_lock.unlock();
+		}
+		_housekeeper.shutdownNow();
+		for (PooledConnection pc : toClose) {
+			pc.closePhysical();
+		}
+	}
+
+	public int getActiveCount() {
+		_lock.lock();
+		try{
+			return _active.size();
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	public int getIdleCount() {
+		_lock.lock();
+		try{
+			return _idle.size();
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	public int getWaitingCount() {
+		_lock.lock();
+		try{
+			return _waiting;
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Method to summarize pool saturation: current active/idle/waiting
+	 * counts, how often and how long borrowers had to wait, and how many
+	 * connections were opened, evicted, found invalid or leaked.
+	 *
+	 * @return a one-line summary of the pool metrics
+	 */
+	public String stats() {
+		_lock.lock();
+		try{
+			double avgWaitMs = _waitCount == 0 ? 0.0 : _totalWaitNanos / 1e6 / _waitCount;
+			return String.format("pool[size=%d min=%d max=%d active=%d idle=%d waiting=%d peakActive=%d] "
+				+ "borrows=%d waits=%d avgWaitMs=%.3f maxWaitMs=%.3f timeouts=%d "
+				+ "created=%d evicted=%d invalid=%d leaks=%d",
+				_total, _minSize, _maxSize, _active.size(), _idle.size(), _waiting, _peakActive,
+				_borrowCount, _waitCount, avgWaitMs, _maxWaitNanos / 1e6, _timeoutCount,
+				_createdCount, _evictedCount, _invalidCount, _leakCount);
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection c = DriverManager.getConnection(_url, _user, _passwd);
+		_lock.lock();
+		try{
+			_createdCount++;
+		}finally{
+			_lock.unlock();
+		}
+		return new PooledConnection(this, c, _statementCacheSize);
+	}
+
+	private boolean isValid(PooledConnection pc) {
+		try{
+			return pc.getConnection().isValid(_validationTimeoutSeconds);
+		}catch (SQLException e){
+			return false;
+		}//end try
+	}
+
+	/**
+	 * Runs periodically: evicts idle connections above the minimum size,
+	 * refills the pool up to the minimum, and reports leaked loans.
+	 */
+	private void housekeep() {
+		long now = System.nanoTime();
+		List<PooledConnection> evicted = new ArrayList<PooledConnection>();
+		List<Throwable> leaked = new ArrayList<Throwable>();
+		int missing = 0;
+		_lock.lock();
+		try{
+			if (_closed) {
+				return;
+			}
+			long idleLimit = TimeUnit.MILLISECONDS.toNanos(_idleTimeoutMillis);
+			// the oldest idle connections sit at the tail of the deque.
+			Iterator<PooledConnection> it = _idle.descendingIterator();
+			while (it.hasNext() && _total > _minSize) {
+				PooledConnection pc = it.next();
+				if (now - pc.lastReturned < idleLimit) {
+					break;
+				}
+				it.remove();
+				_total--;
+				_evictedCount++;
+				evicted.add(pc);
+			}
+			if (_leakThresholdMillis > 0) {
+				long leakLimit = TimeUnit.MILLISECONDS.toNanos(_leakThresholdMillis);
+				for (PooledConnection pc : _active) {
+					if (!pc.leakReported && now - pc.borrowedAt > leakLimit) {
+						pc.leakReported = true;
+						_leakCount++;
+						leaked.add(pc.borrowSite);
+					}
+				}
+			}
+			missing = _minSize - _total;
+			_total += Math.max(0, missing);
+		}finally{
+			_lock.unlock();
+		}
+
+		for (PooledConnection pc : evicted) {
+			pc.closePhysical();
+		}
+		for (Throwable site : leaked) {
+			System.err.println("Warning - possible connection leak: connection on loan for more than "
+				+ _leakThresholdMillis + " ms");
+			if (site != null) {
+				site.printStackTrace();
+			}
+		}
+		for (int i = 0; i < missing; i++) {
+			try{
+				PooledConnection pc = open();
+				boolean keep;
+				_lock.lock();
+				try{
+					keep = !_closed;
+					if (keep) {
+						_idle.addLast(pc);
+						_available.signal();
+					}
+					else {
+						_total--;
+					}
+				}finally{
+					_lock.unlock();
+				}
+				if (!keep) {
+					pc.closePhysical();
+				}
+			}catch (SQLException e){
+				_lock.lock();
+				try{
+					_total--;
+				}finally{
+					_lock.unlock();
+				}
+			}//end try
+		}
+	}
+}
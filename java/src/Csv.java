@@ -0,0 +1,83 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/**
+ * Small helpers shared by the bulk loaders for reading the data/*.csv
+ * layouts and writing reject files.
+ *
+ */
+
+public class Csv {
+	private static final DateTimeFormatter US_DATE =
+		DateTimeFormatter.ofPattern("M/d/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+	private Csv() {
+	}
+
+	/**
+	 * Method to parse a date written as M/D/YYYY, the format of the data files.
+	 *
+	 * @param text the date text
+	 * @return the date, or null when the text is not a valid date
+	 */
+	public static LocalDate parseUsDate(String text) {
+		try{
+			return LocalDate.parse(text.trim(), US_DATE);
+		}catch (DateTimeParseException e){
+			return null;
+		}//end try
+	}
+
+	/**
+	 * Method to append a value as a double-quoted CSV field.
+	 *
+	 * @param sb where the field is appended
+	 * @param value the field value
+	 * @return sb
+	 */
+	public static StringBuilder quote(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == '"') {
+				sb.append('"');
+			}
+			sb.append(ch);
+		}
+		return sb.append('"');
+	}
+
+	/**
+	 * Method to write one line of a reject file: line,reason,original text.
+	 *
+	 * @param rejects the reject file
+	 * @param lineNo the input line number
+	 * @param reason why the row was rejected
+	 * @param line the original input line
+	 * @throws java.io.IOException when the reject file cannot be written
+	 */
+	public static void writeReject(Writer rejects, long lineNo, String reason, String line) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(lineNo).append(',');
+		quote(sb, reason).append(',');
+		quote(sb, line).append('\n');
+		rejects.write(sb.toString());
+	}
+}
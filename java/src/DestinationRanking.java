@@ -0,0 +1,192 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * This class maintains the number of flights offered to each destination
+ * together with a view of the destinations ordered by that number, most
+ * popular first. Adding or removing a route costs O(log d) for d
+ * destinations, and the k most popular destinations are read in O(k), so
+ * ListMostPopularDestinations no longer groups the whole Flight table.
+ *
+ * It follows the RouteIndex: every route that appears in or disappears
+ * from a new catalog snapshot is applied as one increment or decrement.
+ *
+ */
+
+public class DestinationRanking implements RouteIndex.Listener {
+	/**
+	 * A destination and the number of flights to it.
+	 */
+	public static final class Entry {
+		//destination as stored in Flight, with its CHAR padding
+		public final String destination;
+		private int _count;
+
+		Entry(String destination) {
+			this.destination = destination;
+		}
+
+		public int getCount() {
+			return _count;
+		}
+	}
+
+	//most flights first, then by name so the order is total
+	private static final Comparator<Entry> BY_POPULARITY = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			int c = Integer.compare(b._count, a._count);
+			return c != 0 ? c : a.destination.compareTo(b.destination);
+		}
+	};
+
+	private static final String COUNTS =
+		"SELECT F.destination, COUNT(F.destination) FROM Flight F GROUP BY F.destination";
+
+	private final Map<String, Entry> _counts = new HashMap<String, Entry>();
+	private final TreeSet<Entry> _ranking = new TreeSet<Entry>(BY_POPULARITY);
+
+	@Override
+	public void routeAdded(RouteIndex.Route route) {
+		addRoute(route.destination);
+	}
+
+	@Override
+	public void routeRemoved(RouteIndex.Route route) {
+		removeRoute(route.destination);
+	}
+
+	/**
+	 * Method to count one more flight to a destination.
+	 *
+	 * @param destination the destination as stored in Flight
+	 */
+	public synchronized void addRoute(String destination) {
+		String key = destination.trim();
+		Entry e = this._counts.get(key);
+		if (e == null) {
+			e = new Entry(destination);
+			this._counts.put(key, e);
+		}
+		else {
+			this._ranking.remove(e);
+		}
+		e._count++;
+		this._ranking.add(e);
+	}
+
+	/**
+	 * Method to count one flight fewer to a destination. A destination
+	 * without flights is dropped.
+	 *
+	 * @param destination the destination as stored in Flight
+	 */
+	public synchronized void removeRoute(String destination) {
+		String key = destination.trim();
+		Entry e = this._counts.get(key);
+		if (e == null) {
+			return;
+		}
+		this._ranking.remove(e);
+		e._count--;
+		if (e._count > 0) {
+			this._ranking.add(e);
+		}
+		else {
+			this._counts.remove(key);
+		}
+	}
+
+	/**
+	 * Method to get the k most popular destinations.
+	 *
+	 * @param k how many destinations to return
+	 * @return up to k destinations with their flight counts, most flights first
+	 */
+	public synchronized List<List<String>> top(int k) {
+		List<List<String>> rows = new ArrayList<List<String>>(Math.max(0, Math.min(k, this._ranking.size())));
+		Iterator<Entry> it = this._ranking.iterator();
+		for (int i = 0; i < k && it.hasNext(); i++) {
+			Entry e = it.next();
+			List<String> row = new ArrayList<String>(2);
+			row.add(Integer.toString(e._count));
+			row.add(e.destination);
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	public synchronized int size() {
+		return this._counts.size();
+	}
+
+	/**
+	 * Method to compare the maintained counts with a fresh GROUP BY over
+	 * Flight. Ties may be ordered differently, so the check compares each
+	 * destination's count rather than the order of equal counts.
+	 *
+	 * @param esql the database to compare against
+	 * @return a description of every difference, empty when consistent
+	 * @throws java.sql.SQLException when the query fails
+	 */
+	public List<String> verify(AirBooking esql) throws SQLException {
+		try (PooledConnection conn = esql.getPool().borrow()) {
+			return verify(conn);
+		}
+	}
+
+	/**
+	 * Method to compare the maintained counts with Flight as seen by the
+	 * given connection, including its uncommitted changes.
+	 *
+	 * @param conn the connection to query
+	 * @return a description of every difference, empty when consistent
+	 * @throws java.sql.SQLException when the query fails
+	 */
+	public List<String> verify(PooledConnection conn) throws SQLException {
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		ResultSet rs = conn.prepare(COUNTS).executeQuery();
+		try{
+			while (rs.next()) {
+				expected.put(rs.getString(1).trim(), rs.getInt(2));
+			}
+		}finally{
+			rs.close();
+		}
+		List<String> problems = new ArrayList<String>();
+		synchronized (this) {
+			for (Map.Entry<String, Integer> e : expected.entrySet()) {
+				Entry mine = this._counts.get(e.getKey());
+				int count = mine == null ? 0 : mine._count;
+				if (count != e.getValue()) {
+					problems.add(e.getKey() + ": database " + e.getValue() + ", ranking " + count);
+				}
+			}
+			for (String key : this._counts.keySet()) {
+				if (!expected.containsKey(key)) {
+					problems.add(key + ": database 0, ranking " + this._counts.get(key)._count);
+				}
+			}
+		}
+		return problems;
+	}
+}
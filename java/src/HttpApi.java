@@ -0,0 +1,269 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves the menu operations over HTTP with JSON responses, using
+ * the JDK's built-in com.sun.net.httpserver server:
+ *
+ *   POST /passengers             passport, name, bdate, country
+ *   POST /bookings               flight, pid, date
+ *   POST /reviews                pid, flight, score, comment
+ *   GET  /routes                 origin, destination
+ *   GET  /routes/by-duration     origin, destination, k
+ *   GET  /routes/top-rated       k
+ *   GET  /destinations/popular   k
+ *   GET  /seats                  flight, date
+ *   GET  /health
+ *
+ * Arguments are taken from the query string and, for POST, from a form
+ * encoded body; they are the same as in the batch mode. Results are
+ * returned as {"columns":[...],"rows":[[...]]}; refusals as
+ * {"error":REASON,"message":...} with 400, 404 or 409, pool exhaustion
+ * with 503 and database errors with 500.
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java
+ * 21 and later), so a blocked request costs no platform thread while it
+ * waits for a pooled connection. Older JVMs fall back to a fixed pool of
+ * platform threads. Either way the number of requests talking to the
+ * database at once is bounded by the connection pool.
+ *
+ */
+
+public class HttpApi {
+	private static final Map<String, String> GET_ROUTES = new HashMap<String, String>();
+	private static final Map<String, String> POST_ROUTES = new HashMap<String, String>();
+	static {
+		POST_ROUTES.put("/passengers", "add-passenger");
+		POST_ROUTES.put("/bookings", "book");
+		POST_ROUTES.put("/reviews", "review");
+		GET_ROUTES.put("/routes", "routes");
+		GET_ROUTES.put("/routes/by-duration", "by-duration");
+		GET_ROUTES.put("/routes/top-rated", "top-rated");
+		GET_ROUTES.put("/destinations/popular", "popular");
+		GET_ROUTES.put("/seats", "seats");
+	}
+	//form bodies larger than this are refused
+	private static final int MAX_BODY = 64 * 1024;
+
+	private final AirBooking _esql;
+	private final HttpServer _server;
+	private final ExecutorService _executor;
+	private final boolean _virtual;
+	private final AtomicLong _requests = new AtomicLong();
+	private final AtomicLong _failures = new AtomicLong();
+
+	/**
+	 * @param esql the database the operations run against
+	 * @param port the TCP port to listen on
+	 * @param platformThreads request threads when virtual threads are unavailable
+	 * @throws java.io.IOException when the port cannot be bound
+	 */
+	public HttpApi(AirBooking esql, int port, int platformThreads) throws IOException {
+		this._esql = esql;
+		this._server = HttpServer.create(new InetSocketAddress(port), 1024);
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this._virtual = virtual != null;
+		this._executor = virtual != null ? virtual : Executors.newFixedThreadPool(platformThreads, new ThreadFactory() {
+			private final AtomicInteger _n = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "http-worker-" + _n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._server.setExecutor(this._executor);
+		this._server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor reflectively so the
+	 * class still compiles and runs on Java 8.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}catch (ReflectiveOperationException e){
+			return null;
+		}//end try
+	}
+
+	public void start() {
+		this._server.start();
+	}
+
+	/**
+	 * Method to stop accepting requests and wait for those in progress.
+	 *
+	 * @param delaySeconds the longest time to wait for running requests
+	 */
+	public void stop(int delaySeconds) {
+		this._server.stop(delaySeconds);
+		this._executor.shutdown();
+	}
+
+	public int getPort() {
+		return this._server.getAddress().getPort();
+	}
+
+	public boolean usesVirtualThreads() {
+		return this._virtual;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		this._requests.incrementAndGet();
+		try{
+			String path = exchange.getRequestURI().getPath();
+			String method = exchange.getRequestMethod();
+			if (path.equals("/health")) {
+				StringBuilder body = new StringBuilder("{\"status\":\"UP\",\"pool\":");
+				Json.quote(body, this._esql.getPool().stats());
+				if (this._esql.getReplicas().hasReplicas()) {
+					body.append(",\"replicas\":");
+					Json.quote(body, this._esql.getReplicas().stats());
+				}
+				body.append('}');
+				send(exchange, 200, body);
+				return;
+			}
+			String op = ("POST".equals(method) ? POST_ROUTES : GET_ROUTES).get(path);
+			if (op == null) {
+				boolean known = GET_ROUTES.containsKey(path) || POST_ROUTES.containsKey(path);
+				error(exchange, known ? 405 : 404, known ? "METHOD_NOT_ALLOWED" : "NOT_FOUND", method + " " + path);
+				return;
+			}
+			Map<String, String> args = new HashMap<String, String>();
+			parseForm(exchange.getRequestURI().getRawQuery(), args);
+			if ("POST".equals(method)) {
+				String body = readBody(exchange.getRequestBody());
+				if (body == null) {
+					error(exchange, 413, "INVALID", "Request body larger than " + MAX_BODY + " bytes.");
+					return;
+				}
+				parseForm(body, args);
+			}
+			StringBuilder out = new StringBuilder(256);
+			out.append('{');
+			Json.result(out, this._esql.getOperations().invoke(op, args));
+			out.append('}');
+			send(exchange, "POST".equals(method) ? 201 : 200, out);
+		}catch (Operations.Rejected e){
+			error(exchange, statusFor(e.getReason()), e.getReason().name(), e.getMessage());
+		}catch (SQLTimeoutException e){
+			error(exchange, 503, "UNAVAILABLE", e.getMessage());
+		}catch (SQLException e){
+			error(exchange, 500, "ERROR", e.getMessage());
+		}catch (IllegalArgumentException e){
+			error(exchange, 400, "INVALID", e.getMessage());
+		}catch (RuntimeException e){
+			error(exchange, 500, "ERROR", e.toString());
+		}finally{
+			exchange.close();
+		}
+	}
+
+	private static int statusFor(Operations.Reason reason) {
+		switch (reason) {
+			case NOT_FOUND: return 404;
+			case FULL:
+			case DUPLICATE: return 409;
+			default: return 400;
+		}
+	}
+
+	private void error(HttpExchange exchange, int status, String code, String message) throws IOException {
+		this._failures.incrementAndGet();
+		StringBuilder body = new StringBuilder(64);
+		body.append("{\"error\":\"").append(code).append("\",\"message\":");
+		Json.quote(body, message);
+		body.append('}');
+		send(exchange, status, body);
+	}
+
+	private static void send(HttpExchange exchange, int status, CharSequence body) throws IOException {
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+	/**
+	 * Reads a request body, or returns null when it exceeds MAX_BODY.
+	 */
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int n;
+		while ((n = in.read(chunk)) > 0) {
+			buf.write(chunk, 0, n);
+			if (buf.size() > MAX_BODY) {
+				return null;
+			}
+		}
+		return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Adds the name=value pairs of a query string or form body to args.
+	 */
+	static void parseForm(String form, Map<String, String> args) throws UnsupportedEncodingException {
+		if (form == null || form.length() == 0) {
+			return;
+		}
+		for (String pair : form.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq <= 0) {
+				continue;
+			}
+			args.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+	}
+
+	/**
+	 * Method to summarize the requests served so far.
+	 *
+	 * @return a one-line summary
+	 */
+	public String stats() {
+		return String.format("http[requests=%d failed=%d threads=%s]",
+			this._requests.get(), this._failures.get(), this._virtual ? "virtual" : "platform");
+	}
+}
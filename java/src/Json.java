@@ -0,0 +1,103 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.List;
+
+/**
+ * Minimal JSON output helpers for the machine-readable modes. Only writing
+ * is supported; values are strings, numbers or lists of them.
+ *
+ */
+
+public class Json {
+	private Json() {
+	}
+
+	/**
+	 * Method to append a JSON string literal, or null.
+	 *
+	 * @param out where to append
+	 * @param value the value to quote, may be null
+	 */
+	public static void quote(StringBuilder out, String value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			switch (ch) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (ch < 0x20) {
+						out.append(String.format("\\u%04x", (int) ch));
+					}
+					else {
+						out.append(ch);
+					}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Method to append a JSON array of strings.
+	 *
+	 * @param out where to append
+	 * @param values the values
+	 */
+	public static void array(StringBuilder out, List<String> values) {
+		out.append('[');
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			quote(out, values.get(i));
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Method to append a query result as "columns" and "rows" members,
+	 * without the enclosing braces. CHAR padding is trimmed.
+	 *
+	 * @param out where to append
+	 * @param result the result to write
+	 */
+	public static void result(StringBuilder out, QueryResult result) {
+		out.append("\"columns\":");
+		array(out, result.getColumnNames());
+		out.append(",\"rows\":[");
+		for (int i = 0; i < result.getRowCount(); i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append('[');
+			List<String> row = result.getRows().get(i);
+			for (int j = 0; j < row.size(); j++) {
+				if (j > 0) {
+					out.append(',');
+				}
+				String v = row.get(j);
+				quote(out, v == null ? null : v.trim());
+			}
+			out.append(']');
+		}
+		out.append(']');
+	}
+}
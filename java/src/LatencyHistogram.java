@@ -0,0 +1,155 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records latencies into log-linear buckets in the manner of
+ * HdrHistogram: values below 128 ns have a bucket each, and every power of
+ * two above that is split into 64 equal buckets, so any recorded value is
+ * reported within 1/64 (about 1.6%) of its true value over the whole
+ * range of a long.
+ *
+ * record() is a few arithmetic operations and two atomic increments; it
+ * never allocates or locks, so it can be called from any number of
+ * threads on the hot path. Percentiles are read from a consistent-enough
+ * view of the counts while recording continues.
+ *
+ */
+
+public class LatencyHistogram {
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT >> 1;
+	//enough buckets for any non-negative long
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * HALF_COUNT + HALF_COUNT;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong _total = new AtomicLong();
+	private final AtomicLong _sum = new AtomicLong();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * Method to record one latency.
+	 *
+	 * @param nanos the latency in nanoseconds; negative values count as 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(0L, nanos);
+		this._counts.incrementAndGet(index(v));
+		this._total.incrementAndGet();
+		this._sum.addAndGet(v);
+		long max;
+		while (v > (max = this._max.get()) && !this._max.compareAndSet(max, v)) {
+			// retry until the larger value is stored
+		}
+	}
+
+	static int index(long v) {
+		if (v < SUB_COUNT) {
+			return (int) v;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+		return shift * HALF_COUNT + (int) (v >>> shift);
+	}
+
+	/**
+	 * Largest value that falls into a bucket.
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = index / HALF_COUNT - 1;
+		long m = index - (long) shift * HALF_COUNT;
+		return ((m + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return this._total.get();
+	}
+
+	public long getMax() {
+		return this._max.get();
+	}
+
+	public double getMean() {
+		long n = this._total.get();
+		return n == 0 ? 0.0 : (double) this._sum.get() / n;
+	}
+
+	/**
+	 * Method to get the value at a percentile.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the recorded value at that percentile, in nanoseconds, or 0
+	 *         when nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = this._total.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this._counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), this._max.get());
+			}
+		}
+		return this._max.get();
+	}
+
+	/**
+	 * Method to add every value recorded in another histogram to this one.
+	 *
+	 * @param other the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other._counts.get(i);
+			if (c != 0) {
+				this._counts.addAndGet(i, c);
+			}
+		}
+		this._total.addAndGet(other._total.get());
+		this._sum.addAndGet(other._sum.get());
+		long max;
+		long v = other._max.get();
+		while (v > (max = this._max.get()) && !this._max.compareAndSet(max, v)) {
+			// retry until the larger value is stored
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this._counts.set(i, 0);
+		}
+		this._total.set(0);
+		this._sum.set(0);
+		this._max.set(0);
+	}
+
+	/**
+	 * Method to summarize the distribution in milliseconds.
+	 *
+	 * @return count, mean, p50, p95, p99, p99.9 and max on one line
+	 */
+	public String summary() {
+		return String.format("count=%d mean=%.3f p50=%.3f p95=%.3f p99=%.3f p999=%.3f max=%.3f ms",
+			getCount(), getMean() / 1e6, getValueAtPercentile(50) / 1e6, getValueAtPercentile(95) / 1e6,
+			getValueAtPercentile(99) / 1e6, getValueAtPercentile(99.9) / 1e6, getMax() / 1e6);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histogram, error count and rows returned for one operation or
+ * one SQL statement. Recording neither locks nor allocates.
+ *
+ */
+
+public class LatencyStats implements LatencyStatsMBean {
+	private final String _name;
+	private final LatencyHistogram _latency = new LatencyHistogram();
+	private final AtomicLong _errors = new AtomicLong();
+	private final AtomicLong _rows = new AtomicLong();
+
+	public LatencyStats(String name) {
+		this._name = name;
+	}
+
+	/**
+	 * Method to record one call.
+	 *
+	 * @param nanos how long the call took
+	 * @param rows rows returned or affected, or a negative value when the
+	 *        call failed
+	 */
+	public void record(long nanos, long rows) {
+		this._latency.record(nanos);
+		if (rows < 0) {
+			this._errors.incrementAndGet();
+		}
+		else {
+			this._rows.addAndGet(rows);
+		}
+	}
+
+	public LatencyHistogram getHistogram() {
+		return this._latency;
+	}
+
+	public String getName() {
+		return this._name;
+	}
+
+	public long getCount() {
+		return this._latency.getCount();
+	}
+
+	public long getErrors() {
+		return this._errors.get();
+	}
+
+	public long getRows() {
+		return this._rows.get();
+	}
+
+	public double getMeanMillis() {
+		return this._latency.getMean() / 1e6;
+	}
+
+	public double getP50Millis() {
+		return this._latency.getValueAtPercentile(50) / 1e6;
+	}
+
+	public double getP95Millis() {
+		return this._latency.getValueAtPercentile(95) / 1e6;
+	}
+
+	public double getP99Millis() {
+		return this._latency.getValueAtPercentile(99) / 1e6;
+	}
+
+	public double getP999Millis() {
+		return this._latency.getValueAtPercentile(99.9) / 1e6;
+	}
+
+	public double getMaxMillis() {
+		return this._latency.getMax() / 1e6;
+	}
+
+	public void reset() {
+		this._latency.reset();
+		this._errors.set(0);
+		this._rows.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return this._latency.summary() + " errors=" + this._errors.get() + " rows=" + this._rows.get();
+	}
+}
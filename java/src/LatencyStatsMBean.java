@@ -0,0 +1,42 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * JMX view of one operation's or statement's LatencyStats. Times are in
+ * milliseconds and cover every call, failed ones included.
+ *
+ */
+
+public interface LatencyStatsMBean {
+	String getName();
+
+	long getCount();
+
+	long getErrors();
+
+	long getRows();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP95Millis();
+
+	double getP99Millis();
+
+	double getP999Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
@@ -0,0 +1,150 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps a LatencyStats per application operation and per SQL
+ * statement shape, and publishes each one as an MBean under the
+ * "airbooking" domain (type=Operation or type=Statement) so they can be
+ * read from jconsole or any JMX client while the program runs.
+ *
+ * Statements are keyed by their SQL text, which is constant per call site
+ * because values are always bound as parameters. Past MAX_STATEMENTS
+ * distinct texts the rest are counted together under "other", so a caller
+ * that builds SQL from values cannot grow the registry without bound.
+ *
+ * Registering with JMX can be turned off with -Dairbooking.metrics.jmx=false.
+ *
+ */
+
+public class Metrics {
+	static final int MAX_STATEMENTS = 500;
+	static final String OTHER = "other";
+
+	private final ConcurrentHashMap<String, LatencyStats> _operations = new ConcurrentHashMap<String, LatencyStats>();
+	private final ConcurrentHashMap<String, LatencyStats> _statements = new ConcurrentHashMap<String, LatencyStats>();
+	private final boolean _jmx;
+
+	public Metrics() {
+		this._jmx = Boolean.parseBoolean(System.getProperty("airbooking.metrics.jmx", "true"));
+	}
+
+	/**
+	 * Method to get the stats of an operation, creating them on first use.
+	 *
+	 * @param name the operation name
+	 * @return its stats
+	 */
+	public LatencyStats operation(String name) {
+		LatencyStats s = this._operations.get(name);
+		return s != null ? s : create(this._operations, name, "Operation", name);
+	}
+
+	/**
+	 * Method to get the stats of a SQL statement, creating them on first use.
+	 *
+	 * @param sql the statement text as passed to the execute methods
+	 * @return its stats
+	 */
+	public LatencyStats statement(String sql) {
+		LatencyStats s = this._statements.get(sql);
+		if (s != null) {
+			return s;
+		}
+		if (this._statements.size() >= MAX_STATEMENTS) {
+			s = this._statements.get(OTHER);
+			return s != null ? s : create(this._statements, OTHER, "Statement", OTHER);
+		}
+		return create(this._statements, sql, "Statement", normalize(sql));
+	}
+
+	private LatencyStats create(ConcurrentHashMap<String, LatencyStats> map, String key, String type, String name) {
+		LatencyStats s = new LatencyStats(name);
+		LatencyStats prev = map.putIfAbsent(key, s);
+		if (prev != null) {
+			return prev;
+		}
+		if (this._jmx) {
+			try{
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = new ObjectName("airbooking:type=" + type + ",name=" + ObjectName.quote(name));
+				if (!server.isRegistered(on)) {
+					server.registerMBean(s, on);
+				}
+			}catch (Exception e){
+				// the stats still work without JMX
+				System.err.println("Could not register " + name + " with JMX: " + e.getMessage());
+			}//end try
+		}
+		return s;
+	}
+
+	/**
+	 * Collapses runs of whitespace so a statement reads on one line.
+	 */
+	static String normalize(String sql) {
+		return sql.trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * Method to summarize every operation and statement that was called,
+	 * slowest total time first.
+	 *
+	 * @return one line per operation and statement
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Operations:\n");
+		append(sb, this._operations.values());
+		sb.append("Statements:\n");
+		append(sb, this._statements.values());
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, Collection<LatencyStats> values) {
+		List<LatencyStats> list = new ArrayList<LatencyStats>(values);
+		Collections.sort(list, new Comparator<LatencyStats>() {
+			public int compare(LatencyStats a, LatencyStats b) {
+				return Double.compare(b.getMeanMillis() * b.getCount(), a.getMeanMillis() * a.getCount());
+			}
+		});
+		for (LatencyStats s : list) {
+			if (s.getCount() > 0) {
+				sb.append("  ").append(s.getName()).append('\n');
+				sb.append("    ").append(s).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Method to reset every operation and statement.
+	 */
+	public void reset() {
+		for (LatencyStats s : this._operations.values()) {
+			s.reset();
+		}
+		for (LatencyStats s : this._statements.values()) {
+			s.reset();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class performs the eight menu operations from arguments instead of
+ * prompts, so they can be driven by the batch command mode and other
+ * non-interactive front ends. Every method is thread-safe and returns its
+ * result as a QueryResult; requests that break a rule of the application
+ * (unknown passenger, full flight, second review) throw Rejected.
+ *
+ * The interactive menu reads its input and then calls the same methods, so
+ * its requests are timed like any other. invoke() runs an operation by name from
+ * string arguments, for the batch mode and the HTTP API.
+ *
+ * Each call's latency, and whether it returned a result, is recorded
+ * under its invoke() name in AirBooking.getMetrics(). The read-only
+ * operations run on a read replica when one is configured.
+ *
+ */
+
+public class Operations {
+	/**
+	 * Why a request was refused.
+	 */
+	public enum Reason {
+		//an argument is missing or out of range
+		INVALID,
+		//the passenger, flight or booking does not exist
+		NOT_FOUND,
+		//no seat left on the flight for that date
+		FULL,
+		//the passport, booking or review already exists
+		DUPLICATE
+	}
+
+	/**
+	 * Thrown when a request is refused by a rule of the application rather
+	 * than by a database failure.
+	 */
+	public static class Rejected extends Exception {
+		private static final long serialVersionUID = 1L;
+		private final Reason _reason;
+
+		public Rejected(Reason reason, String message) {
+			super(message);
+			this._reason = reason;
+		}
+
+		public Reason getReason() {
+			return this._reason;
+		}
+	}
+
+	private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+	private final AirBooking _esql;
+
+	public Operations(AirBooking esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to add a passenger (menu option 1). The insert skips a
+	 * passport that already exists and returns the new row with its
+	 * generated pID, so either outcome costs a single statement.
+	 *
+	 * @param passNum the 10-character passport number
+	 * @param fullName the passenger's name, capitalized as the menu does
+	 * @param bdate the birth date
+	 * @param country the country of origin, capitalized as the menu does
+	 * @return the new Passenger row
+	 * @throws Operations.Rejected when an argument is invalid or the passport exists
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult addPassenger(String passNum, String fullName, Date bdate, String country) throws Rejected, SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			if (passNum == null || passNum.length() != 10) {
+				throw new Rejected(Reason.INVALID, "Passport numbers must be 10 characters long.");
+			}
+			if (isEmpty(fullName) || isEmpty(country) || bdate == null) {
+				throw new Rejected(Reason.INVALID, "Name, birth date and country are required.");
+			}
+			QueryResult added = this._esql.executeUpdateReturning("INSERT INTO Passenger (passNum, fullName, bdate, country) "
+				+ "VALUES (?, ?, ?, ?) ON CONFLICT (passNum) DO NOTHING RETURNING *",
+				passNum, AirBooking.castString(fullName), bdate, AirBooking.castString(country));
+			if (added.isEmpty()) {
+				throw new Rejected(Reason.DUPLICATE, "This passport number already exists in the system.");
+			}
+			return result = added;
+		}finally{
+			record("add-passenger", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to book a seat (menu option 2). The flight, passenger and seat
+	 * checks and the insert are made by one call to the bookFlight database
+	 * function, so every outcome costs a single statement.
+	 *
+	 * @param flightNum the flight to book
+	 * @param pID the passenger
+	 * @param departure the departure date
+	 * @return the new booking as bookRef, departure, flightNum, pID
+	 * @throws Operations.Rejected when the flight or passenger does not exist,
+	 *         the flight is full or the passenger is already booked
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult book(String flightNum, int pID, Date departure) throws Rejected, SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			if (isEmpty(flightNum) || departure == null) {
+				throw new Rejected(Reason.INVALID, "Flight number and departure date are required.");
+			}
+			String bookRef = this._esql.getBookRefs().next();
+			SeatReservations.Reservation reservation;
+			try{
+				reservation = this._esql.getReservations().reserveChecked(bookRef, flightNum, departure, pID);
+			}catch (SQLException e){
+				if (FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+					throw new Rejected(Reason.NOT_FOUND, "Unknown flight " + flightNum + " or passenger " + pID + ".");
+				}
+				throw e;
+			}//end try
+			if (reservation.status == SeatReservations.Status.UNKNOWN_FLIGHT) {
+				throw new Rejected(Reason.NOT_FOUND, "Unknown flight " + flightNum + ".");
+			}
+			if (reservation.status == SeatReservations.Status.UNKNOWN_PASSENGER) {
+				throw new Rejected(Reason.NOT_FOUND, "Unknown passenger " + pID + ".");
+			}
+			if (reservation.status == SeatReservations.Status.FULL) {
+				throw new Rejected(Reason.FULL, "Flight " + flightNum + " is fully booked on " + departure + ".");
+			}
+			if (reservation.status == SeatReservations.Status.DUPLICATE) {
+				throw new Rejected(Reason.DUPLICATE, "This passenger is already booked on this flight for that date.");
+			}
+			return result = reservation.booking;
+		}finally{
+			record("book", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to record a review (menu option 3). Passengers may only review
+	 * a flight they booked, and only once.
+	 *
+	 * @param pID the passenger
+	 * @param flightNum the flight
+	 * @param score the score from 0 to 5
+	 * @param comment the comment, may be empty
+	 * @return the new Ratings row
+	 * @throws Operations.Rejected when the score is out of range, there is
+	 *         no booking, or the flight was already reviewed
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult review(int pID, String flightNum, int score, String comment) throws Rejected, SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			if (score < 0 || score > 5) {
+				throw new Rejected(Reason.INVALID, "Scores range from 0 to 5.");
+			}
+			if (isEmpty(flightNum)) {
+				throw new Rejected(Reason.INVALID, "Flight number is required.");
+			}
+			if (this._esql.executeQuery("SELECT pID FROM Booking WHERE pID = ? AND flightNum = ?", pID, flightNum) == 0) {
+				throw new Rejected(Reason.NOT_FOUND, "No booking record found for this passenger and flight.");
+			}
+			if (this._esql.executeQuery("SELECT pID FROM Ratings WHERE pID = ? AND flightNum = ?", pID, flightNum) != 0) {
+				throw new Rejected(Reason.DUPLICATE, "Cannot rate some flight twice.");
+			}
+			return result = this._esql.executeUpdateReturning("INSERT INTO Ratings (pID, flightNum, score, comment) "
+				+ "VALUES (?, ?, ?, ?) RETURNING *", pID, flightNum, score, comment == null ? "" : comment);
+		}finally{
+			record("review", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to list the flights between two cities (menu option 4).
+	 *
+	 * @param origin the origin city, capitalized as stored
+	 * @param destination the destination city, capitalized as stored
+	 * @return flightNum, origin, destination, plane and duration per flight
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult routes(String origin, String destination) throws SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			RouteIndex routes = this._esql.getRoutes();
+			if (routes == null) {
+				String query = "SELECT F.flightNum, F.origin, F.destination, F.plane, F.duration ";
+				query += "FROM Flight F ";
+				query += "WHERE F.origin = ? ";
+				query += "AND F.destination = ?;";
+				return result = this._esql.executeReadQuery(query, origin, destination);
+			}
+			// Answered from the in-memory flight catalog.
+			List<List<String>> r = new ArrayList<List<String>>();
+			for (RouteIndex.Route f : routes.find(origin, destination)) {
+				r.add(Arrays.asList(f.flightNum, f.origin, f.destination, f.plane, Integer.toString(f.duration)));
+			}
+			return result = new QueryResult(Arrays.asList("flightnum", "origin", "destination", "plane", "duration"), r);
+		}finally{
+			record("routes", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to list the k destinations with the most flights (menu option 5).
+	 *
+	 * @param k how many destinations to list
+	 * @return flight count and destination, most flights first
+	 * @throws java.sql.SQLException on a database error or a negative k
+	 */
+	public QueryResult popularDestinations(int k) throws SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			DestinationRanking ranking = this._esql.getDestinations();
+			if (ranking == null) {
+				String query = "SELECT COUNT(F.destination), F.destination ";
+				query += "FROM Flight F ";
+				query += "GROUP BY F.destination ";
+				query += "ORDER BY COUNT(F.destination) DESC ";
+				query += "LIMIT ?;";
+				return result = this._esql.executeReadQuery(query, k);
+			}
+			// Read from the maintained ranking.
+			if (k < 0) {
+				throw new SQLException("LIMIT must not be negative");
+			}
+			return result = new QueryResult(Arrays.asList("count", "destination"), ranking.top(k));
+		}finally{
+			record("popular", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to list the k flights with the best average score (menu option 6).
+	 *
+	 * @param k how many flights to list
+	 * @return airline, flightNum, origin, destination, plane and score
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult highestRatedRoutes(int k) throws SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			// RatingSummary holds each flight's running average, so the top
+			// flights are read off indexAvgScore instead of grouping Ratings.
+			String query = "SELECT A.name, F.flightNum, F.origin, F.destination, ";
+			query += "F.plane, S.avgScore AS \"score\" ";
+			query += "FROM RatingSummary S, Flight F, Airline A ";
+			query += "WHERE S.flightNum = F.flightNum AND A.airId = F.airId ";
+			query += "ORDER BY S.avgScore DESC ";
+			query += "LIMIT ?;";
+			return result = this._esql.executeReadQuery(query, k);
+		}finally{
+			record("top-rated", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to list the k longest flights between two cities (menu option 7).
+	 *
+	 * @param origin the origin city, capitalized as stored
+	 * @param destination the destination city, capitalized as stored
+	 * @param k how many flights to list
+	 * @return airline, flightNum, origin, destination, plane and duration
+	 * @throws java.sql.SQLException on a database error or a negative k
+	 */
+	public QueryResult flightsByDuration(String origin, String destination, int k) throws SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			RouteIndex routes = this._esql.getRoutes();
+			if (routes == null) {
+				String query = "SELECT A.name, F.flightNum, F.origin, F.destination, F.plane, F.duration ";
+				query += "FROM Airline A, Flight F ";
+				query += "WHERE A.airId = F.airID AND ";
+				query += "F.origin = ? AND ";
+				query += "F.destination = ? ";
+				query += "GROUP BY F.flightNum, A.name, A.airID ";
+				query += "ORDER BY F.duration DESC ";
+				query += "LIMIT ?; ";
+				return result = this._esql.executeReadQuery(query, origin, destination, k);
+			}
+			// Answered from the in-memory catalog, already sorted by duration.
+			if (k < 0) {
+				throw new SQLException("LIMIT must not be negative");
+			}
+			List<RouteIndex.Route> flights = routes.find(origin, destination);
+			List<List<String>> r = new ArrayList<List<String>>();
+			for (int i = 0; i < flights.size() && i < k; i++) {
+				RouteIndex.Route f = flights.get(i);
+				r.add(Arrays.asList(f.airlineName, f.flightNum, f.origin, f.destination, f.plane, Integer.toString(f.duration)));
+			}
+			return result = new QueryResult(Arrays.asList("name", "flightnum", "origin", "destination", "plane", "duration"), r);
+		}finally{
+			record("by-duration", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to count the free seats of a flight on a date (menu option 8).
+	 *
+	 * @param flightNum the flight
+	 * @param departure the departure date
+	 * @return one row of flightNum, origin, destination, departure, total,
+	 *         booked and available seats, or no rows for an unknown flight
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult availableSeats(String flightNum, Date departure) throws SQLException {
+		long start = System.nanoTime();
+		QueryResult result = null;
+		try{
+			// SeatInventory holds the booked count per flight and date, so
+			// availability is one primary key lookup; no row means no bookings.
+			String query = "SELECT F.flightNum, F.origin, F.destination, ?::date AS departure, ";
+			query += "F.seats AS \"total seats\", COALESCE(I.booked, 0) AS \"booked seats\", ";
+			query += "F.seats - COALESCE(I.booked, 0) AS \"available seats\" ";
+			query += "FROM Flight F LEFT JOIN SeatInventory I ";
+			query += "ON I.flightNum = F.flightNum AND I.departure = ? ";
+			query += "WHERE F.flightNum = ?";
+			return result = this._esql.executeReadQuery(query, departure, departure, flightNum);
+		}finally{
+			record("seats", start, result);
+		}//end try
+	}
+
+	/**
+	 * Method to tell whether a word names an operation invoke() knows.
+	 *
+	 * @param op the word
+	 * @return true for an operation name
+	 */
+	public static boolean isOperation(String op) {
+		return op.equals("add-passenger") || op.equals("book") || op.equals("review")
+			|| op.equals("routes") || op.equals("popular") || op.equals("top-rated")
+			|| op.equals("by-duration") || op.equals("seats");
+	}
+
+	/**
+	 * Method to run an operation by name. Arguments are the strings given on
+	 * a batch line or in a request: flight, pid, date, passport, name, bdate,
+	 * country, score, comment, origin, destination and k, as the operation
+	 * needs them. Dates are yyyy-mm-dd; cities are capitalized as the menu
+	 * does.
+	 *
+	 * @param op one of the names accepted by isOperation
+	 * @param args the arguments by name
+	 * @return the operation's result
+	 * @throws Operations.Rejected when an argument is missing or malformed,
+	 *         or the operation itself is refused
+	 * @throws java.sql.SQLException on a database error
+	 */
+	public QueryResult invoke(String op, Map<String, String> args) throws Rejected, SQLException {
+		if (op.equals("add-passenger")) {
+			return addPassenger(arg(args, "passport"), arg(args, "name"), date(args, "bdate"), arg(args, "country"));
+		}
+		else if (op.equals("book")) {
+			return book(arg(args, "flight"), number(args, "pid"), date(args, "date"));
+		}
+		else if (op.equals("review")) {
+			String comment = args.get("comment");
+			return review(number(args, "pid"), arg(args, "flight"), number(args, "score"), comment == null ? "" : comment);
+		}
+		else if (op.equals("routes")) {
+			return routes(city(args, "origin"), city(args, "destination"));
+		}
+		else if (op.equals("popular")) {
+			return popularDestinations(number(args, "k"));
+		}
+		else if (op.equals("top-rated")) {
+			return highestRatedRoutes(number(args, "k"));
+		}
+		else if (op.equals("by-duration")) {
+			return flightsByDuration(city(args, "origin"), city(args, "destination"), number(args, "k"));
+		}
+		else if (op.equals("seats")) {
+			return availableSeats(arg(args, "flight"), date(args, "date"));
+		}
+		throw new Rejected(Reason.INVALID, "Unknown operation " + op);
+	}
+
+	/**
+	 * Times an operation; a call that returned no result counts as an error.
+	 */
+	private void record(String op, long start, QueryResult r) {
+		this._esql.getMetrics().operation(op).record(System.nanoTime() - start, r == null ? -1 : r.getRowCount());
+	}
+
+	private static String arg(Map<String, String> args, String name) throws Rejected {
+		String value = args.get(name);
+		if (value == null || value.trim().length() == 0) {
+			throw new Rejected(Reason.INVALID, "Missing argument " + name + ".");
+		}
+		return value;
+	}
+
+	private static String city(Map<String, String> args, String name) throws Rejected {
+		return AirBooking.castString(arg(args, name).trim());
+	}
+
+	private static int number(Map<String, String> args, String name) throws Rejected {
+		try{
+			return Integer.parseInt(arg(args, name));
+		}catch (NumberFormatException e){
+			throw new Rejected(Reason.INVALID, "Argument " + name + " must be a number.");
+		}//end try
+	}
+
+	private static Date date(Map<String, String> args, String name) throws Rejected {
+		try{
+			return Date.valueOf(arg(args, name));
+		}catch (IllegalArgumentException e){
+			throw new Rejected(Reason.INVALID, "Argument " + name + " must be a date as yyyy-mm-dd.");
+		}//end try
+	}
+
+	private static boolean isEmpty(String s) {
+		return s == null || s.trim().length() == 0;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This class bulk loads passengers from a CSV file in the passenger.csv
+ * layout (pID,passNum,fullName,bdate,country). Rows are checked as they are
+ * read and streamed with the COPY protocol into a temporary staging table;
+ * duplicates are then resolved and the survivors inserted with a few
+ * set-based statements in one transaction, instead of one probe, insert and
+ * read-back per passenger.
+ *
+ * The pID column of the file is ignored: the generatePID trigger assigns
+ * new ids exactly as it does for AddPassenger.
+ *
+ * Every rejected row is written to the reject file as
+ * line,reason,original text.
+ *
+ */
+
+public class PassengerImport {
+	//bytes buffered before they are handed to the COPY stream
+	private static final int COPY_CHUNK = 64 * 1024;
+
+	private final AirBooking _esql;
+	private final boolean _updateExisting;
+
+	//statistics of the last run
+	private long _read = 0;
+	private long _copied = 0;
+	private long _copiedBytes = 0;
+	private long _inserted = 0;
+	private long _updated = 0;
+	private long _rejected = 0;
+	private long _copyNanos = 0;
+	private long _mergeNanos = 0;
+
+	/**
+	 * @param esql the database to import into
+	 * @param updateExisting when true, a passNum that already exists has its
+	 *        name, birth date and country updated; otherwise the row is rejected
+	 */
+	public PassengerImport(AirBooking esql, boolean updateExisting) {
+		this._esql = esql;
+		this._updateExisting = updateExisting;
+	}
+
+	/**
+	 * Method to import every row of the input in one transaction.
+	 *
+	 * @param input the CSV rows, without a header line
+	 * @param rejects where rejected rows are written
+	 * @throws java.sql.SQLException when the load fails; nothing is imported
+	 * @throws java.io.IOException when the input or reject file fails
+	 */
+	public void run(Reader input, Writer rejects) throws SQLException, IOException {
+		try (PooledConnection conn = this._esql.getPool().borrow()) {
+			Connection c = conn.getConnection();
+			c.setAutoCommit(false);
+			Statement stmt = c.createStatement();
+			try{
+				stmt.executeUpdate("CREATE TEMP TABLE passenger_stage ("
+					+ "line_no BIGINT NOT NULL, passNum CHAR(10) NOT NULL, fullName CHAR(24) NOT NULL, "
+					+ "bdate DATE NOT NULL, country CHAR(24) NOT NULL, raw TEXT NOT NULL) ON COMMIT DROP");
+
+				long start = System.nanoTime();
+				copy(c, input, rejects);
+				this._copyNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				merge(stmt, rejects);
+				c.commit();
+				this._mergeNanos = System.nanoTime() - start;
+			}finally{
+				// undoes a failed import whatever failed; restoring autocommit
+				// on its own would commit it
+				stmt.close();
+				c.rollback();
+				c.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * Streams the valid rows of the input into the staging table.
+	 */
+	private void copy(Connection c, Reader input, Writer rejects) throws SQLException, IOException {
+		CopyIn copy = c.unwrap(PGConnection.class).getCopyAPI().copyIn(
+			"COPY passenger_stage (line_no, passNum, fullName, bdate, country, raw) FROM STDIN WITH CSV");
+		try{
+			BufferedReader br = new BufferedReader(input, COPY_CHUNK);
+			StringBuilder chunk = new StringBuilder(COPY_CHUNK + 1024);
+			String line;
+			long lineNo = 0;
+			while ((line = br.readLine()) != null) {
+				lineNo++;
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				this._read++;
+				String reason = appendRow(chunk, lineNo, line);
+				if (reason != null) {
+					reject(rejects, lineNo, reason, line);
+					continue;
+				}
+				this._copied++;
+				if (chunk.length() >= COPY_CHUNK) {
+					write(copy, chunk);
+				}
+			}//end while
+			write(copy, chunk);
+			copy.endCopy();
+		}finally{
+			if (copy.isActive()) {
+				copy.cancelCopy();
+			}
+		}
+	}
+
+	/**
+	 * Validates one input line and appends it to the chunk as a CSV row of
+	 * the staging table.
+	 *
+	 * @return null when the row was appended, otherwise why it was rejected
+	 */
+	private static String appendRow(StringBuilder chunk, long lineNo, String line) {
+		String[] f = line.split(",", -1);
+		if (f.length != 5) {
+			return "expected 5 fields but found " + f.length;
+		}
+		String passNum = f[1].trim();
+		if (passNum.length() != 10) {
+			return "passNum must be 10 characters";
+		}
+		String fullName = f[2].trim().replaceAll("\\s+", " ");
+		if (fullName.length() == 0 || fullName.length() > 24) {
+			return "fullName must be 1 to 24 characters";
+		}
+		String country = f[4].trim().replaceAll("\\s+", " ");
+		if (country.length() == 0 || country.length() > 24) {
+			return "country must be 1 to 24 characters";
+		}
+		LocalDate bdate = Csv.parseUsDate(f[3]);
+		if (bdate == null) {
+			return "bdate is not a valid M/D/YYYY date";
+		}
+		if (bdate.getYear() < 1900) {
+			return "bdate is before 1900";
+		}
+		chunk.append(lineNo).append(',');
+		Csv.quote(chunk, passNum).append(',');
+		Csv.quote(chunk, AirBooking.castString(fullName)).append(',');
+		chunk.append(bdate).append(',');
+		Csv.quote(chunk, AirBooking.castString(country)).append(',');
+		Csv.quote(chunk, line).append('\n');
+		return null;
+	}
+
+	private void write(CopyIn copy, StringBuilder chunk) throws SQLException {
+		if (chunk.length() == 0) {
+			return;
+		}
+		byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+		copy.writeToCopy(bytes, 0, bytes.length);
+		this._copiedBytes += bytes.length;
+		chunk.setLength(0);
+	}
+
+	/**
+	 * Resolves duplicates and moves the staged rows into Passenger. The
+	 * table is locked against concurrent inserts so the existence check and
+	 * the insert see the same set of passport numbers.
+	 */
+	private void merge(Statement stmt, Writer rejects) throws SQLException, IOException {
+		stmt.executeUpdate("CREATE INDEX ON passenger_stage (passNum)");
+		stmt.executeUpdate("ANALYZE passenger_stage");
+		stmt.executeUpdate("LOCK TABLE Passenger IN SHARE ROW EXCLUSIVE MODE");
+
+		// the same passport twice in the file: keep the first occurrence
+		ResultSet rs = stmt.executeQuery("DELETE FROM passenger_stage s "
+			+ "USING passenger_stage t WHERE t.passNum = s.passNum AND t.line_no < s.line_no "
+			+ "RETURNING s.line_no, s.raw, (SELECT MIN(line_no) FROM passenger_stage u WHERE u.passNum = s.passNum)");
+		while (rs.next()) {
+			reject(rejects, rs.getLong(1), "duplicate passNum in file, first seen on line " + rs.getLong(3), rs.getString(2));
+		}//end while
+		rs.close();
+
+		// passports that are already registered
+		if (this._updateExisting) {
+			this._updated = stmt.executeUpdate("UPDATE Passenger P "
+				+ "SET fullName = s.fullName, bdate = s.bdate, country = s.country "
+				+ "FROM passenger_stage s WHERE P.passNum = s.passNum");
+			stmt.executeUpdate("DELETE FROM passenger_stage s USING Passenger P WHERE P.passNum = s.passNum");
+		}
+		else {
+			rs = stmt.executeQuery("DELETE FROM passenger_stage s USING Passenger P "
+				+ "WHERE P.passNum = s.passNum RETURNING s.line_no, s.raw, P.pID");
+			while (rs.next()) {
+				reject(rejects, rs.getLong(1), "passNum already exists as pID " + rs.getInt(3), rs.getString(2));
+			}//end while
+			rs.close();
+		}
+
+		this._inserted = stmt.executeUpdate("INSERT INTO Passenger (passNum, fullName, bdate, country) "
+			+ "SELECT passNum, fullName, bdate, country FROM passenger_stage ORDER BY line_no");
+	}
+
+	private void reject(Writer rejects, long lineNo, String reason, String line) throws IOException {
+		this._rejected++;
+		Csv.writeReject(rejects, lineNo, reason, line);
+	}
+
+	/**
+	 * Method to summarize the last run: rows read, inserted, updated and
+	 * rejected, and the throughput of the copy and merge phases.
+	 *
+	 * @return a human readable summary
+	 */
+	public String stats() {
+		double copySec = this._copyNanos / 1e9;
+		double totalSec = (this._copyNanos + this._mergeNanos) / 1e9;
+		return String.format("Read %d rows in %.2f s (%.0f rows/s)%n"
+			+ "  inserted %d, updated %d, rejected %d%n"
+			+ "  copy phase %.2f s (%d rows, %.1f MB/s), merge phase %.2f s",
+			this._read, totalSec, totalSec == 0 ? 0.0 : this._read / totalSec,
+			this._inserted, this._updated, this._rejected,
+			copySec, this._copied, copySec == 0 ? 0.0 : this._copiedBytes / 1e6 / copySec, this._mergeNanos / 1e9);
+	}
+}
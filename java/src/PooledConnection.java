@@ -0,0 +1,87 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A physical connection on loan from a {@link ConnectionPool}. Closing it
+ * hands the physical connection back to the pool instead of closing it, so
+ * it is meant to be used in a try-with-resources block.
+ *
+ */
+
+public class PooledConnection implements AutoCloseable {
+	private final ConnectionPool _pool;
+	private final Connection _connection;
+	private final StatementCache _statements;
+
+	//bookkeeping maintained by the pool
+	long createdAt;
+	long lastReturned;
+	long borrowedAt;
+	Throwable borrowSite;
+	boolean leakReported;
+	boolean onLoan;
+
+	PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+		this._pool = pool;
+		this._connection = connection;
+		this._statements = new StatementCache(connection, statementCacheSize);
+		this.createdAt = System.nanoTime();
+		this.lastReturned = this.createdAt;
+	}
+
+	/**
+	 * Method to get the physical connection backing this loan. Callers must
+	 * not close it themselves.
+	 *
+	 * @return the physical connection
+	 */
+	public Connection getConnection() {
+		return this._connection;
+	}
+
+	/**
+	 * Method to get a cached prepared statement on this connection. The
+	 * statement belongs to the connection's cache and must not be closed.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 * @return the prepared statement
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		return this._statements.prepare(sql);
+	}
+
+	/**
+	 * Method to return the connection to the pool it was borrowed from.
+	 */
+	@Override
+	public void close() {
+		this._pool.release(this);
+	}
+
+	/**
+	 * Method to close the physical connection. Only the pool calls this.
+	 */
+	void closePhysical() {
+		this._statements.clear();
+		try{
+			this._connection.close();
+		}catch (Exception e){
+			// ignored.
+		}//end try
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The complete result of one query execution: the column names from the
+ * result set metadata, the rows, and the row count. Callers that used to
+ * run a query once to count rows and again to fetch them read both from
+ * here instead.
+ *
+ */
+
+public class QueryResult {
+	private final List<String> _columnNames;
+	private final List<List<String>> _rows;
+
+	public QueryResult(List<String> columnNames, List<List<String>> rows) {
+		this._columnNames = Collections.unmodifiableList(columnNames);
+		this._rows = rows;
+	}
+
+	/**
+	 * Method to read every remaining row of a result set as strings.
+	 *
+	 * @param rs the result set, left open
+	 * @return its column labels and rows
+	 * @throws java.sql.SQLException when the result set cannot be read
+	 */
+	public static QueryResult read(ResultSet rs) throws SQLException {
+		/*
+		 * obtains the metadata object for the returned result set.  The metadata
+		 * contains row and column info.
+		*/
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int numCol = rsmd.getColumnCount();
+		List<String> columnNames = new ArrayList<String>(numCol);
+		for (int i=1; i<=numCol; ++i)
+			columnNames.add(rsmd.getColumnLabel(i));
+
+		//iterates through the result set and saves the data returned by the query.
+		List<List<String>> rows = new ArrayList<List<String>>();
+		while (rs.next()){
+			List<String> record = new ArrayList<String>(numCol);
+			for (int i=1; i<=numCol; ++i)
+				record.add(rs.getString(i));
+			rows.add(record);
+		}//end while
+		return new QueryResult(columnNames, rows);
+	}
+
+	public List<String> getColumnNames() {
+		return this._columnNames;
+	}
+
+	public int getColumnCount() {
+		return this._columnNames.size();
+	}
+
+	public List<List<String>> getRows() {
+		return this._rows;
+	}
+
+	public int getRowCount() {
+		return this._rows.size();
+	}
+
+	public boolean isEmpty() {
+		return this._rows.isEmpty();
+	}
+
+	/**
+	 * Method to get one value by row and column index, both zero based.
+	 *
+	 * @param row the row index
+	 * @param column the column index
+	 * @return the value as returned by ResultSet.getString
+	 */
+	public String get(int row, int column) {
+		return this._rows.get(row).get(column);
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class picks the connection pool a read-only query runs on. Writes
+ * always go to the primary; reads go round-robin to the read replicas that
+ * passed their last health check, and to the primary when there are none.
+ *
+ * A background check queries every replica at a fixed interval, and takes
+ * it out of rotation while it cannot be reached or, when a limit is set,
+ * while it replays the primary's changes too late. A read that loses its
+ * replica connection marks the replica down at once and is retried on the
+ * primary.
+ *
+ * Replicas apply bookings with a delay, so a thread that just wrote can be
+ * kept on the primary for a while (read-your-writes). A thread is one
+ * session here: the interactive menu, a batch worker or an HTTP request.
+ *
+ */
+
+public class ReplicaRouter {
+	//replay delay in ms; 0 on a server that is not a standby
+	private static final String CHECK =
+		"SELECT CASE WHEN pg_is_in_recovery() "
+		+ "THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) ELSE 0 END";
+
+	/**
+	 * One read replica and its state.
+	 */
+	public static final class Replica {
+		private final String _url;
+		private final ConnectionPool _pool;
+		private volatile boolean _healthy = true;
+		private volatile long _lagMillis = 0;
+		private final AtomicLong _reads = new AtomicLong();
+		private final AtomicLong _failures = new AtomicLong();
+
+		Replica(String url, ConnectionPool pool) {
+			this._url = url;
+			this._pool = pool;
+		}
+
+		public ConnectionPool getPool() {
+			return this._pool;
+		}
+
+		public boolean isHealthy() {
+			return this._healthy;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s[%s lagMs=%d reads=%d failures=%d]", this._url,
+				this._healthy ? "up" : "down", this._lagMillis, this._reads.get(), this._failures.get());
+		}
+	}
+
+	private final List<Replica> _replicas = new ArrayList<Replica>();
+	private final AtomicInteger _next = new AtomicInteger();
+	private final long _stickyNanos;
+	private final long _maxLagMillis;
+	//per thread, System.nanoTime() until which its reads stay on the primary
+	private final ThreadLocal<long[]> _stickUntil = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { System.nanoTime() };
+		}
+	};
+	private final AtomicLong _primaryReads = new AtomicLong();
+	private final AtomicLong _stickyReads = new AtomicLong();
+	private ScheduledExecutorService _checker = null;
+
+	/**
+	 * @param stickyMillis how long a thread reads from the primary after a
+	 *        write, 0 for never
+	 * @param maxLagMillis replay delay above which a replica is taken out of
+	 *        rotation, 0 for no limit
+	 */
+	public ReplicaRouter(long stickyMillis, long maxLagMillis) {
+		this._stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+		this._maxLagMillis = maxLagMillis;
+	}
+
+	/**
+	 * Method to add a read replica. Only called while setting up.
+	 *
+	 * @param url the replica's JDBC URL, for reporting
+	 * @param pool the replica's connection pool
+	 */
+	public void addReplica(String url, ConnectionPool pool) {
+		this._replicas.add(new Replica(url, pool));
+	}
+
+	public boolean hasReplicas() {
+		return !this._replicas.isEmpty();
+	}
+
+	/**
+	 * Method to pick the replica for the calling thread's next read.
+	 *
+	 * @return the next healthy replica in turn, or null when the read must
+	 *         go to the primary
+	 */
+	public Replica pick() {
+		int n = this._replicas.size();
+		if (n == 0) {
+			return null;
+		}
+		long stickUntil = this._stickUntil.get()[0];
+		if (this._stickyNanos > 0 && System.nanoTime() - stickUntil < 0) {
+			this._stickyReads.incrementAndGet();
+			return null;
+		}
+		int start = this._next.getAndIncrement();
+		for (int i = 0; i < n; i++) {
+			Replica r = this._replicas.get(Math.floorMod(start + i, n));
+			if (r._healthy) {
+				r._reads.incrementAndGet();
+				return r;
+			}
+		}
+		this._primaryReads.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Method to note that the calling thread wrote to the primary, so its
+	 * reads stay there for the sticky period.
+	 */
+	public void wrote() {
+		if (this._stickyNanos > 0 && !this._replicas.isEmpty()) {
+			this._stickUntil.get()[0] = System.nanoTime() + this._stickyNanos;
+		}
+	}
+
+	/**
+	 * Method to tell whether a failed read should be retried on the primary:
+	 * the replica could not be reached, was shut down or was in recovery
+	 * conflict, as opposed to a fault of the query itself.
+	 *
+	 * @param e the failure of a read on a replica
+	 * @return true when the replica, not the query, is to blame
+	 */
+	public static boolean isReplicaFailure(SQLException e) {
+		String state = e.getSQLState();
+		return e instanceof SQLTimeoutException
+			|| state == null
+			|| state.startsWith("08")
+			|| state.startsWith("57P")
+			|| state.equals("40001");
+	}
+
+	/**
+	 * Method to take a replica out of rotation until its next successful
+	 * health check.
+	 *
+	 * @param replica the replica a read failed on
+	 * @param e the failure
+	 */
+	public void failed(Replica replica, SQLException e) {
+		replica._failures.incrementAndGet();
+		if (replica._healthy) {
+			replica._healthy = false;
+			System.err.println("Warning - replica " + replica._url + " taken out of rotation: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Method to check every replica now: it must answer a query within the
+	 * pool's borrow timeout and, when a lag limit is set, have replayed the
+	 * primary's changes recently enough.
+	 */
+	public void check() {
+		for (Replica r : this._replicas) {
+			boolean healthy;
+			String why = null;
+			try (PooledConnection conn = r._pool.borrow()) {
+				PreparedStatement stmt = conn.prepare(CHECK);
+				ResultSet rs = stmt.executeQuery();
+				try{
+					rs.next();
+					r._lagMillis = (long) rs.getDouble(1);
+				}finally{
+					rs.close();
+				}
+				healthy = this._maxLagMillis <= 0 || r._lagMillis <= this._maxLagMillis;
+				if (!healthy) {
+					why = "replication lag " + r._lagMillis + " ms";
+				}
+			}catch (SQLException e){
+				healthy = false;
+				why = e.getMessage();
+			}//end try
+			if (healthy && !r._healthy) {
+				System.err.println("Replica " + r._url + " back in rotation");
+			}
+			else if (!healthy && r._healthy) {
+				System.err.println("Warning - replica " + r._url + " taken out of rotation: " + why);
+			}
+			r._healthy = healthy;
+		}
+	}
+
+	/**
+	 * Method to check the replicas in the background at a fixed interval.
+	 *
+	 * @param seconds time between checks
+	 */
+	public void start(long seconds) {
+		if (this._replicas.isEmpty()) {
+			return;
+		}
+		this._checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "replica-health-check");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._checker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				check();
+			}
+		}, 0, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Method to stop the health checks and close every replica pool.
+	 */
+	public void stop() {
+		if (this._checker != null) {
+			this._checker.shutdownNow();
+		}
+		for (Replica r : this._replicas) {
+			r._pool.close();
+		}
+	}
+
+	/**
+	 * Method to summarize where reads went.
+	 *
+	 * @return a one-line summary
+	 */
+	public String stats() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("replicas[primaryReads=%d stickyReads=%d]", this._primaryReads.get(), this._stickyReads.get()));
+		for (Replica r : this._replicas) {
+			sb.append(' ').append(r);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,386 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class writes query results for people and for other programs, as
+ * aligned text tables, CSV or JSON lines. Everything goes through one
+ * large buffered writer, so output costs a write per buffer instead of a
+ * write per cell.
+ *
+ * Tables size each column to its longest value, with CHAR padding trimmed,
+ * and right-align numeric columns. Results that are streamed are measured
+ * on their first TABLE_SAMPLE rows only, so memory stays bounded; a later
+ * value that is longer just pushes its row out of line. CSV and JSON lines
+ * are written straight from the ResultSet, row by row, and suit exports of
+ * any size.
+ *
+ */
+
+public class ResultRenderer {
+	//characters buffered before a write to the underlying stream
+	public static final int BUFFER_SIZE = 64 * 1024;
+	//rows read to size the columns of a streamed table
+	public static final int TABLE_SAMPLE = 1000;
+	private static final String COLUMN_GAP = "  ";
+
+	private final Writer _out;
+
+	/**
+	 * @param out where to write; wrapped in a buffer of BUFFER_SIZE
+	 */
+	public ResultRenderer(Writer out) {
+		this._out = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Method to create a renderer writing to standard out. Each table is
+	 * flushed when finished, so prompts printed afterwards appear in order.
+	 *
+	 * @return the renderer
+	 */
+	public static ResultRenderer stdout() {
+		return new ResultRenderer(new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), BUFFER_SIZE));
+	}
+
+	public void flush() throws IOException {
+		this._out.flush();
+	}
+
+	/**
+	 * Method to print a whole result as an aligned table and flush it.
+	 *
+	 * @param headers the column titles, or null for the result's column names
+	 * @param result the rows to print
+	 * @throws java.io.IOException when the output cannot be written
+	 */
+	public void table(List<String> headers, QueryResult result) throws IOException {
+		Table t = new Table(headers == null ? result.getColumnNames() : headers, Integer.MAX_VALUE);
+		for (List<String> row : result.getRows()) {
+			t.add(row.toArray(new String[row.size()]));
+		}
+		t.finish();
+	}
+
+	/**
+	 * Method to create a handler printing streamed rows as an aligned
+	 * table. The header is printed with the first row, so an empty result
+	 * prints nothing; call finish() once the query is done.
+	 *
+	 * @return the handler
+	 */
+	public Table table() {
+		return new Table(null, TABLE_SAMPLE);
+	}
+
+	/**
+	 * Method to create a handler writing streamed rows as CSV (RFC 4180),
+	 * with a header line of column labels before the first row. CHAR
+	 * padding is trimmed; NULL is an empty field.
+	 *
+	 * @return the handler
+	 */
+	public RowHandler csv() {
+		return new RowHandler() {
+			private boolean[] _trim = null;
+			private final StringBuilder _line = new StringBuilder();
+
+			public boolean row(ResultSet rs) throws SQLException {
+				if (this._trim == null) {
+					this._trim = charColumns(rs.getMetaData());
+					ResultSetMetaData rsmd = rs.getMetaData();
+					for (int i = 1; i <= this._trim.length; i++) {
+						if (i > 1) {
+							this._line.append(',');
+						}
+						csvField(this._line, rsmd.getColumnLabel(i));
+					}
+					this._line.append("\r\n");
+				}
+				for (int i = 1; i <= this._trim.length; i++) {
+					if (i > 1) {
+						this._line.append(',');
+					}
+					String v = rs.getString(i);
+					if (v != null) {
+						csvField(this._line, this._trim[i - 1] ? trimEnd(v) : v);
+					}
+				}
+				this._line.append("\r\n");
+				write(this._line);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Method to create a handler writing streamed rows as JSON lines, one
+	 * object per row keyed by column label. Numbers and booleans are
+	 * written as such, everything else as strings; CHAR padding is trimmed.
+	 *
+	 * @return the handler
+	 */
+	public RowHandler jsonLines() {
+		return new RowHandler() {
+			private int[] _types = null;
+			private String[] _keys = null;
+			private final StringBuilder _line = new StringBuilder();
+
+			public boolean row(ResultSet rs) throws SQLException {
+				if (this._types == null) {
+					ResultSetMetaData rsmd = rs.getMetaData();
+					int n = rsmd.getColumnCount();
+					this._types = new int[n];
+					this._keys = new String[n];
+					for (int i = 0; i < n; i++) {
+						this._types[i] = rsmd.getColumnType(i + 1);
+						StringBuilder key = new StringBuilder();
+						Json.quote(key, rsmd.getColumnLabel(i + 1));
+						this._keys[i] = key.append(':').toString();
+					}
+				}
+				this._line.append('{');
+				for (int i = 0; i < this._types.length; i++) {
+					if (i > 0) {
+						this._line.append(',');
+					}
+					this._line.append(this._keys[i]);
+					String v = rs.getString(i + 1);
+					if (v == null) {
+						this._line.append("null");
+					}
+					else if (isNumericType(this._types[i]) && isNumber(v)) {
+						this._line.append(v);
+					}
+					else if (this._types[i] == Types.BOOLEAN || this._types[i] == Types.BIT) {
+						this._line.append(rs.getBoolean(i + 1));
+					}
+					else {
+						Json.quote(this._line, this._types[i] == Types.CHAR ? trimEnd(v) : v);
+					}
+				}
+				this._line.append("}\n");
+				write(this._line);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Rows of an aligned table. Rows are held until the column widths are
+	 * known, at most the sample size, and written as they come after that.
+	 */
+	public final class Table implements RowHandler {
+		private List<String> _headers;
+		private final int _sample;
+		private final List<String[]> _held = new ArrayList<String[]>();
+		private int[] _widths = null;
+		private boolean[] _numeric = null;
+		private boolean _sized = false;
+		private final StringBuilder _line = new StringBuilder();
+
+		Table(List<String> headers, int sample) {
+			this._headers = headers;
+			this._sample = sample;
+		}
+
+		public boolean row(ResultSet rs) throws SQLException {
+			ResultSetMetaData rsmd = rs.getMetaData();
+			int n = rsmd.getColumnCount();
+			if (this._headers == null) {
+				this._headers = new ArrayList<String>(n);
+				for (int i = 1; i <= n; i++) {
+					this._headers.add(rsmd.getColumnLabel(i));
+				}
+			}
+			String[] row = new String[n];
+			for (int i = 0; i < n; i++) {
+				row[i] = rs.getString(i + 1);
+			}
+			try{
+				add(row);
+			}catch (IOException e){
+				throw new SQLException("Could not write the result: " + e.getMessage(), e);
+			}//end try
+			return true;
+		}
+
+		void add(String[] row) throws IOException {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = row[i] == null ? "" : trimEnd(row[i]);
+			}
+			if (this._sized) {
+				writeRow(row);
+				return;
+			}
+			this._held.add(row);
+			if (this._held.size() >= this._sample) {
+				size();
+			}
+		}
+
+		/**
+		 * Method to write the rows still held and flush the output. Prints
+		 * nothing for a streamed result without rows.
+		 *
+		 * @throws java.io.IOException when the output cannot be written
+		 */
+		public void finish() throws IOException {
+			if (!this._sized && this._headers != null) {
+				size();
+			}
+			ResultRenderer.this._out.flush();
+		}
+
+		/**
+		 * Measures the held rows in one pass, then writes the header and them.
+		 */
+		private void size() throws IOException {
+			int n = this._headers.size();
+			this._widths = new int[n];
+			this._numeric = new boolean[n];
+			for (int i = 0; i < n; i++) {
+				this._widths[i] = this._headers.get(i).length();
+				this._numeric[i] = !this._held.isEmpty();
+			}
+			for (String[] row : this._held) {
+				for (int i = 0; i < n; i++) {
+					this._widths[i] = Math.max(this._widths[i], row[i].length());
+					this._numeric[i] &= row[i].length() == 0 || isNumber(row[i]);
+				}
+			}
+			this._sized = true;
+			writeRow(this._headers.toArray(new String[n]));
+			for (String[] row : this._held) {
+				writeRow(row);
+			}
+			this._held.clear();
+		}
+
+		private void writeRow(String[] row) throws IOException {
+			int last = row.length - 1;
+			for (int i = 0; i <= last; i++) {
+				int pad = Math.max(0, this._widths[i] - row[i].length());
+				if (this._numeric[i]) {
+					spaces(this._line, pad).append(row[i]);
+				}
+				else {
+					this._line.append(row[i]);
+					if (i < last) {
+						spaces(this._line, pad);
+					}
+				}
+				if (i < last) {
+					this._line.append(COLUMN_GAP);
+				}
+			}
+			this._line.append(System.lineSeparator());
+			ResultRenderer.this._out.append(this._line);
+			this._line.setLength(0);
+		}
+	}
+
+	private void write(StringBuilder line) throws SQLException {
+		try{
+			this._out.append(line);
+		}catch (IOException e){
+			throw new SQLException("Could not write the result: " + e.getMessage(), e);
+		}//end try
+		line.setLength(0);
+	}
+
+	private static boolean[] charColumns(ResultSetMetaData rsmd) throws SQLException {
+		boolean[] trim = new boolean[rsmd.getColumnCount()];
+		for (int i = 0; i < trim.length; i++) {
+			trim[i] = rsmd.getColumnType(i + 1) == Types.CHAR;
+		}
+		return trim;
+	}
+
+	private static void csvField(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+				Csv.quote(sb, value);
+				return;
+			}
+		}
+		sb.append(value);
+	}
+
+	private static boolean isNumericType(int type) {
+		switch (type) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Tells whether text is a plain decimal number, as opposed to NaN or
+	 * Infinity, which JSON cannot hold unquoted.
+	 */
+	static boolean isNumber(String s) {
+		int i = s.startsWith("-") ? 1 : 0;
+		boolean digits = false;
+		boolean point = false;
+		for (; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch >= '0' && ch <= '9') {
+				digits = true;
+			}
+			else if (ch == '.' && !point) {
+				point = true;
+			}
+			else {
+				return false;
+			}
+		}
+		return digits;
+	}
+
+	private static String trimEnd(String s) {
+		int end = s.length();
+		while (end > 0 && s.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return end == s.length() ? s : s.substring(0, end);
+	}
+
+	private static StringBuilder spaces(StringBuilder sb, int n) {
+		for (int i = 0; i < n; i++) {
+			sb.append(' ');
+		}
+		return sb;
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the flight catalog in memory as origin -> destination ->
+ * flights, each list joined with the airline name and sorted by duration,
+ * longest first as option 7 lists them. Route searches are answered from
+ * the current snapshot without a database round trip.
+ *
+ * The snapshot is immutable and replaced as a whole, so readers never lock.
+ * A background thread compares a cheap fingerprint of the Flight and
+ * Airline tables every few seconds and reloads when it changes; refresh()
+ * reloads immediately.
+ *
+ * Listeners are told about every flight that a reload adds, removes or
+ * changes (a change is reported as a removal followed by an addition), so
+ * structures derived from the catalog can be maintained incrementally.
+ *
+ */
+
+public class RouteIndex {
+	private static final String LOAD_ROUTES =
+		"SELECT A.name, F.flightNum, F.origin, F.destination, F.plane, F.seats, F.duration "
+		+ "FROM Airline A, Flight F WHERE A.airId = F.airId";
+	private static final String FINGERPRINT =
+		"SELECT (SELECT COUNT(*) || ':' || COALESCE(SUM(hashtext(F::text)), 0) FROM Flight F) "
+		+ "|| '/' || (SELECT COUNT(*) || ':' || COALESCE(SUM(hashtext(A::text)), 0) FROM Airline A)";
+
+	/**
+	 * One flight of the catalog. Text values keep the CHAR padding they have
+	 * in the database so the menu output lines up as before.
+	 */
+	public static final class Route {
+		public final String airlineName;
+		public final String flightNum;
+		public final String origin;
+		public final String destination;
+		public final String plane;
+		public final int seats;
+		public final int duration;
+
+		Route(String airlineName, String flightNum, String origin, String destination, String plane, int seats, int duration) {
+			this.airlineName = airlineName;
+			this.flightNum = flightNum;
+			this.origin = origin;
+			this.destination = destination;
+			this.plane = plane;
+			this.seats = seats;
+			this.duration = duration;
+		}
+
+		boolean sameAs(Route other) {
+			return airlineName.equals(other.airlineName) && flightNum.equals(other.flightNum)
+				&& origin.equals(other.origin) && destination.equals(other.destination)
+				&& plane.equals(other.plane) && seats == other.seats && duration == other.duration;
+		}
+	}
+
+	/**
+	 * Receives the differences between consecutive catalog snapshots.
+	 * Calls are made while the index is being refreshed, one at a time.
+	 */
+	public interface Listener {
+		void routeAdded(Route route);
+
+		void routeRemoved(Route route);
+	}
+
+	private static final Comparator<Route> BY_DURATION_DESC = new Comparator<Route>() {
+		public int compare(Route a, Route b) {
+			int c = Integer.compare(b.duration, a.duration);
+			return c != 0 ? c : a.flightNum.compareTo(b.flightNum);
+		}
+	};
+
+	private final AirBooking _esql;
+	private volatile Map<String, Map<String, List<Route>>> _routes = Collections.emptyMap();
+	private volatile String _fingerprint = null;
+	private volatile int _size = 0;
+	//the current snapshot by flight number, used to compute differences
+	private Map<String, Route> _byFlight = Collections.emptyMap();
+	private final List<Listener> _listeners = new ArrayList<Listener>();
+	private ScheduledExecutorService _refresher = null;
+
+	public RouteIndex(AirBooking esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to register a listener. It is first told about every route of
+	 * the current snapshot as an addition.
+	 *
+	 * @param listener the listener to add
+	 */
+	public synchronized void addListener(Listener listener) {
+		this._listeners.add(listener);
+		for (Route route : this._byFlight.values()) {
+			listener.routeAdded(route);
+		}
+	}
+
+	/**
+	 * Method to load the catalog and start checking for changes.
+	 *
+	 * @param checkSeconds how often to look for catalog changes
+	 * @throws java.sql.SQLException when the initial load fails
+	 */
+	public void start(long checkSeconds) throws SQLException {
+		refresh();
+		this._refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "route-index-refresher");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._refresher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try{
+					refreshIfChanged();
+				}catch (SQLException e){
+					System.err.println("Warning - route index refresh failed: " + e.getMessage());
+				}//end try
+			}
+		}, checkSeconds, checkSeconds, TimeUnit.SECONDS);
+	}
+
+	public void stop() {
+		if (this._refresher != null) {
+			this._refresher.shutdownNow();
+		}
+	}
+
+	/**
+	 * Method to reload the catalog if the tables changed since the last load.
+	 *
+	 * @return true when a reload happened
+	 * @throws java.sql.SQLException when the check or reload fails
+	 */
+	public boolean refreshIfChanged() throws SQLException {
+		String current = this._esql.executeQueryForResult(FINGERPRINT).get(0, 0);
+		if (current.equals(this._fingerprint)) {
+			return false;
+		}
+		refresh();
+		return true;
+	}
+
+	/**
+	 * Method to reload the whole catalog and swap in the new snapshot.
+	 *
+	 * @throws java.sql.SQLException when the catalog cannot be read
+	 */
+	public synchronized void refresh() throws SQLException {
+		String fingerprint = this._esql.executeQueryForResult(FINGERPRINT).get(0, 0);
+		ColumnarResult r = this._esql.executeQueryForColumns(LOAD_ROUTES);
+		Map<String, Map<String, List<Route>>> routes = new HashMap<String, Map<String, List<Route>>>();
+		Map<String, Route> byFlight = new HashMap<String, Route>();
+		for (int i = 0; i < r.getRowCount(); i++) {
+			Route route = new Route(r.getString(i, 0), r.getString(i, 1), r.getString(i, 2),
+				r.getString(i, 3), r.getString(i, 4), r.getInt(i, 5), r.getInt(i, 6));
+			byFlight.put(route.flightNum.trim(), route);
+			String origin = route.origin.trim();
+			Map<String, List<Route>> byDestination = routes.get(origin);
+			if (byDestination == null) {
+				byDestination = new HashMap<String, List<Route>>();
+				routes.put(origin, byDestination);
+			}
+			String destination = route.destination.trim();
+			List<Route> flights = byDestination.get(destination);
+			if (flights == null) {
+				flights = new ArrayList<Route>();
+				byDestination.put(destination, flights);
+			}
+			flights.add(route);
+		}
+		for (Map<String, List<Route>> byDestination : routes.values()) {
+			for (Map.Entry<String, List<Route>> e : byDestination.entrySet()) {
+				Collections.sort(e.getValue(), BY_DURATION_DESC);
+				e.setValue(Collections.unmodifiableList(e.getValue()));
+			}
+		}
+		this._routes = routes;
+		this._size = r.getRowCount();
+		this._fingerprint = fingerprint;
+
+		Map<String, Route> previous = this._byFlight;
+		this._byFlight = byFlight;
+		for (Map.Entry<String, Route> e : previous.entrySet()) {
+			Route now = byFlight.get(e.getKey());
+			if (now == null || !now.sameAs(e.getValue())) {
+				for (Listener l : this._listeners) {
+					l.routeRemoved(e.getValue());
+				}
+			}
+		}
+		for (Map.Entry<String, Route> e : byFlight.entrySet()) {
+			Route before = previous.get(e.getKey());
+			if (before == null || !before.sameAs(e.getValue())) {
+				for (Listener l : this._listeners) {
+					l.routeAdded(e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method to list the flights from origin to destination, longest first.
+	 * Names are matched exactly, ignoring the CHAR padding, as the SQL
+	 * equality on those columns does.
+	 *
+	 * @param origin the origin city
+	 * @param destination the destination city
+	 * @return the flights, possibly empty; the list must not be modified
+	 */
+	public List<Route> find(String origin, String destination) {
+		Map<String, List<Route>> byDestination = this._routes.get(origin.trim());
+		if (byDestination == null) {
+			return Collections.emptyList();
+		}
+		List<Route> flights = byDestination.get(destination.trim());
+		return flights == null ? Collections.<Route>emptyList() : flights;
+	}
+
+	public int size() {
+		return this._size;
+	}
+}
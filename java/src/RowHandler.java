@@ -0,0 +1,33 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback that receives the rows of a streamed query one at a time. The
+ * result set is positioned on the current row and is only valid for the
+ * duration of the call, so a handler must copy out whatever it keeps.
+ *
+ */
+
+public interface RowHandler {
+	/**
+	 * Method called once per row.
+	 *
+	 * @param rs the result set positioned on the current row
+	 * @return true to keep reading, false to stop early
+	 * @throws java.sql.SQLException when a column cannot be read
+	 */
+	boolean row(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,271 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class upgrades a database created from sql/create.sql in place by
+ * running the scripts in sql/migrations that it has not run yet, lowest
+ * version first. Scripts are named NNN_description.sql.
+ *
+ * Each applied version is recorded in SchemaVersion with a checksum of its
+ * script, so every script runs exactly once and a script changed after it
+ * was applied is reported instead of being skipped silently. A script runs
+ * in one transaction together with its SchemaVersion row, so a script that
+ * fails leaves the database at the previous version. A session advisory
+ * lock keeps two migrators from running at the same time.
+ *
+ */
+
+public class SchemaMigrator {
+	private static final Pattern NAME = Pattern.compile("(\\d+)_(\\w+)\\.sql");
+	//advisory lock key, any constant shared by every migrator
+	private static final long LOCK_KEY = 166020L;
+
+	/**
+	 * One script of the migrations folder.
+	 */
+	public static class Migration {
+		public final int version;
+		public final String description;
+		public final File file;
+		public final String sql;
+		public final String checksum;
+
+		Migration(int version, String description, File file, String sql) {
+			this.version = version;
+			this.description = description;
+			this.file = file;
+			this.sql = sql;
+			this.checksum = checksum(sql);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%03d %s", this.version, this.description);
+		}
+	}
+
+	private final AirBooking _esql;
+	private final File _dir;
+
+	public SchemaMigrator(AirBooking esql, File dir) {
+		this._esql = esql;
+		this._dir = dir;
+	}
+
+	/**
+	 * Method to read every script of the migrations folder.
+	 *
+	 * @return the scripts by ascending version
+	 * @throws java.io.IOException when the folder or a script cannot be read,
+	 *         or two scripts share a version
+	 */
+	public List<Migration> scan() throws IOException {
+		File[] files = this._dir.listFiles();
+		if (files == null) {
+			throw new IOException("No migrations folder " + this._dir);
+		}
+		List<Migration> all = new ArrayList<Migration>();
+		for (File f : files) {
+			Matcher m = NAME.matcher(f.getName());
+			if (f.isFile() && m.matches()) {
+				String sql = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+				all.add(new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), f, sql));
+			}
+		}
+		Collections.sort(all, new Comparator<Migration>() {
+			public int compare(Migration a, Migration b) {
+				return Integer.compare(a.version, b.version);
+			}
+		});
+		for (int i = 1; i < all.size(); i++) {
+			if (all.get(i).version == all.get(i - 1).version) {
+				throw new IOException("Two migrations have version " + all.get(i).version
+					+ ": " + all.get(i - 1).file.getName() + " and " + all.get(i).file.getName());
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Method to apply every script that has not been applied yet.
+	 *
+	 * @param out where progress is reported
+	 * @return the number of scripts applied
+	 * @throws java.io.IOException when the scripts cannot be read
+	 * @throws java.sql.SQLException when a script fails, was changed after
+	 *         it was applied, or is older than the database
+	 */
+	public int migrate(PrintStream out) throws IOException, SQLException {
+		List<Migration> all = scan();
+		try (PooledConnection pc = this._esql.getPool().borrow()) {
+			Connection c = pc.getConnection();
+			Statement st = c.createStatement();
+			try{
+				st.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+				try{
+					createTable(st);
+					Map<Integer, String> applied = applied(st);
+					verify(all, applied);
+					int latest = applied.isEmpty() ? 0 : Collections.max(applied.keySet());
+					int count = 0;
+					for (Migration m : all) {
+						if (applied.containsKey(m.version)) {
+							continue;
+						}
+						if (m.version < latest) {
+							throw new SQLException("Migration " + m + " is older than version " + latest
+								+ " of the database; give it a higher number");
+						}
+						long start = System.nanoTime();
+						apply(c, st, m, start);
+						out.println(String.format("Applied %s in %.1f ms", m, (System.nanoTime() - start) / 1e6));
+						count++;
+					}
+					out.println(count == 0 ? "Database is up to date" : count + " migrations applied");
+					return count;
+				}finally{
+					st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+				}
+			}finally{
+				st.close();
+			}
+		}
+	}
+
+	/**
+	 * Method to list every script with whether it was applied.
+	 *
+	 * @param out where the list is printed
+	 * @return the number of scripts not applied yet
+	 * @throws java.io.IOException when the scripts cannot be read
+	 * @throws java.sql.SQLException on a database error, or when an applied
+	 *         script was changed
+	 */
+	public int status(PrintStream out) throws IOException, SQLException {
+		List<Migration> all = scan();
+		try (PooledConnection pc = this._esql.getPool().borrow()) {
+			Statement st = pc.getConnection().createStatement();
+			try{
+				createTable(st);
+				Map<Integer, String> applied = applied(st);
+				int pending = 0;
+				for (Migration m : all) {
+					String checksum = applied.get(m.version);
+					out.println(m + "  " + (checksum == null ? "pending"
+						: checksum.equals(m.checksum) ? "applied" : "applied, but the script has changed since"));
+					if (checksum == null) {
+						pending++;
+					}
+				}
+				return pending;
+			}finally{
+				st.close();
+			}
+		}
+	}
+
+	private void apply(Connection c, Statement st, Migration m, long start) throws SQLException {
+		c.setAutoCommit(false);
+		try{
+			st.execute(m.sql);
+			PreparedStatement ps = c.prepareStatement(
+				"INSERT INTO SchemaVersion (version, description, checksum, millis) VALUES (?, ?, ?, ?)");
+			try{
+				ps.setInt(1, m.version);
+				ps.setString(2, m.description);
+				ps.setString(3, m.checksum);
+				ps.setLong(4, (System.nanoTime() - start) / 1000000L);
+				ps.executeUpdate();
+			}finally{
+				ps.close();
+			}
+			c.commit();
+		}catch (SQLException e){
+			c.rollback();
+			throw new SQLException("Migration " + m + " failed and was rolled back: " + e.getMessage(), e.getSQLState(), e);
+		}finally{
+			c.setAutoCommit(true);
+		}//end try
+	}
+
+	private static void createTable(Statement st) throws SQLException {
+		st.execute("CREATE TABLE IF NOT EXISTS SchemaVersion("
+			+ "version INTEGER NOT NULL, "
+			+ "description TEXT NOT NULL, "
+			+ "checksum CHAR(64) NOT NULL, "
+			+ "appliedAt TIMESTAMP NOT NULL DEFAULT now(), "
+			+ "millis BIGINT NOT NULL, "
+			+ "PRIMARY KEY(version))");
+	}
+
+	private static Map<Integer, String> applied(Statement st) throws SQLException {
+		Map<Integer, String> applied = new TreeMap<Integer, String>();
+		ResultSet rs = st.executeQuery("SELECT version, checksum FROM SchemaVersion");
+		try{
+			while (rs.next()) {
+				applied.put(rs.getInt(1), rs.getString(2));
+			}
+		}finally{
+			rs.close();
+		}
+		return applied;
+	}
+
+	private static void verify(List<Migration> all, Map<Integer, String> applied) throws SQLException {
+		for (Migration m : all) {
+			String checksum = applied.get(m.version);
+			if (checksum != null && !checksum.equals(m.checksum)) {
+				throw new SQLException("Migration " + m + " was changed after it was applied; "
+					+ "add a new migration instead of editing " + m.file.getName());
+			}
+		}
+	}
+
+	/**
+	 * SHA-256 of the script, ignoring the line ending style of the checkout.
+	 */
+	static String checksum(String sql) {
+		try{
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(64);
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return sb.toString();
+		}catch (NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}//end try
+	}
+}
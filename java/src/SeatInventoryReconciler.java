@@ -0,0 +1,177 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class checks the booked-seat counters in SeatInventory against the
+ * bookings they count and can repair them.
+ *
+ * The counters are maintained by the reserveSeat/releaseSeat triggers, so
+ * they only drift when those are bypassed (triggers disabled during a bulk
+ * load, rows edited by hand). Drift is found with one comparison of
+ * SeatInventory against Booking grouped by flight and date. Each drifted
+ * counter is then fixed in its own short transaction that locks the
+ * counter row before recounting, the same lock a booking takes, so
+ * bookings made while the job runs are not lost.
+ *
+ */
+
+public class SeatInventoryReconciler {
+	private static final String FIND_DRIFT =
+		"SELECT COALESCE(I.flightNum, B.flightNum), COALESCE(I.departure, B.departure), "
+		+ "COALESCE(I.booked, 0), COALESCE(B.n, 0) "
+		+ "FROM SeatInventory I FULL JOIN "
+		+ "(SELECT flightNum, departure, COUNT(*) AS n FROM Booking GROUP BY flightNum, departure) B "
+		+ "ON I.flightNum = B.flightNum AND I.departure = B.departure "
+		+ "WHERE COALESCE(I.booked, 0) <> COALESCE(B.n, 0)";
+	private static final String ENSURE_ROW =
+		"INSERT INTO SeatInventory (flightNum, departure, booked) VALUES (?, ?, 0) ON CONFLICT DO NOTHING";
+	private static final String LOCK_ROW =
+		"SELECT booked FROM SeatInventory WHERE flightNum = ? AND departure = ? FOR UPDATE";
+	private static final String RECOUNT =
+		"UPDATE SeatInventory SET booked = "
+		+ "(SELECT COUNT(*) FROM Booking B WHERE B.flightNum = ? AND B.departure = ?) "
+		+ "WHERE flightNum = ? AND departure = ?";
+
+	/**
+	 * A counter that disagrees with Booking.
+	 */
+	public static final class Drift {
+		public final String flightNum;
+		public final Date departure;
+		public final int counted;
+		public final int booked;
+
+		Drift(String flightNum, Date departure, int counted, int booked) {
+			this.flightNum = flightNum;
+			this.departure = departure;
+			this.counted = counted;
+			this.booked = booked;
+		}
+
+		@Override
+		public String toString() {
+			return this.flightNum.trim() + " " + this.departure + ": SeatInventory " + this.counted
+				+ ", Booking " + this.booked;
+		}
+	}
+
+	private final AirBooking _esql;
+	private ScheduledExecutorService _scheduler = null;
+
+	public SeatInventoryReconciler(AirBooking esql) {
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to find the counters that disagree with Booking.
+	 *
+	 * @return every drifted counter, empty when consistent
+	 * @throws java.sql.SQLException when the comparison fails
+	 */
+	public List<Drift> check() throws SQLException {
+		ColumnarResult r = this._esql.executeQueryForColumns(FIND_DRIFT);
+		List<Drift> drift = new ArrayList<Drift>(r.getRowCount());
+		for (int i = 0; i < r.getRowCount(); i++) {
+			drift.add(new Drift(r.getString(i, 0), r.getDate(i, 1), (int) r.getLong(i, 2), (int) r.getLong(i, 3)));
+		}
+		return drift;
+	}
+
+	/**
+	 * Method to find drifted counters and set each one to its booking count.
+	 *
+	 * @return the counters that were drifted when checked
+	 * @throws java.sql.SQLException when the check or a repair fails
+	 */
+	public List<Drift> reconcile() throws SQLException {
+		List<Drift> drift = check();
+		if (drift.isEmpty()) {
+			return drift;
+		}
+		try (PooledConnection conn = this._esql.getPool().borrow()) {
+			Connection c = conn.getConnection();
+			c.setAutoCommit(false);
+			try{
+				for (Drift d : drift) {
+					PreparedStatement stmt = conn.prepare(ENSURE_ROW);
+					stmt.setString(1, d.flightNum);
+					stmt.setDate(2, d.departure);
+					stmt.executeUpdate();
+					stmt = conn.prepare(LOCK_ROW);
+					stmt.setString(1, d.flightNum);
+					stmt.setDate(2, d.departure);
+					ResultSet rs = stmt.executeQuery();
+					rs.close();
+					stmt = conn.prepare(RECOUNT);
+					stmt.setString(1, d.flightNum);
+					stmt.setDate(2, d.departure);
+					stmt.setString(3, d.flightNum);
+					stmt.setDate(4, d.departure);
+					stmt.executeUpdate();
+					c.commit();
+				}
+			}catch (SQLException e){
+				c.rollback();
+				throw e;
+			}finally{
+				c.setAutoCommit(true);
+			}
+		}
+		return drift;
+	}
+
+	/**
+	 * Method to reconcile in the background at a fixed interval. Repairs are
+	 * reported on standard error.
+	 *
+	 * @param minutes time between runs
+	 */
+	public void start(long minutes) {
+		this._scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "seat-inventory-reconciler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try{
+					for (Drift d : reconcile()) {
+						System.err.println("Warning - repaired seat count " + d);
+					}
+				}catch (SQLException e){
+					System.err.println("Warning - seat inventory reconciliation failed: " + e.getMessage());
+				}//end try
+			}
+		}, minutes, minutes, TimeUnit.MINUTES);
+	}
+
+	public void stop() {
+		if (this._scheduler != null) {
+			this._scheduler.shutdownNow();
+		}
+	}
+}
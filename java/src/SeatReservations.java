@@ -0,0 +1,309 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.ServerErrorMessage;
+
+/**
+ * This class books seats without ever exceeding Flight.seats for a
+ * departure date, no matter how many sessions book concurrently.
+ *
+ * Capacity is enforced by the database: the reserveSeat trigger on Booking
+ * increments the (flightNum, departure) row of SeatInventory only while it
+ * is below the flight's seat count, and fails the insert otherwise. That
+ * row lock is the single point of truth across processes.
+ *
+ * Inside this process, bookings of the same flight and date are first
+ * serialized on one of a fixed set of striped locks. Threads contending
+ * for a sold-out or busy flight then queue here without holding a pooled
+ * connection, instead of piling up on the database row lock.
+ *
+ * A booking whose reference is already taken, e.g. by one of the random
+ * references made before BookRefAllocator, is retried with a fresh one.
+ *
+ */
+
+public class SeatReservations {
+	private static final String INSERT_BOOKING =
+		"INSERT INTO Booking (bookRef, departure, flightNum, pID) VALUES (?, ?, ?, ?) "
+		+ "RETURNING bookRef, departure, flightNum, pID";
+	//sql/migrations/004_book_flight_function.sql
+	private static final String BOOK_FLIGHT =
+		"SELECT status, bookRef, departure, flightNum, pID FROM bookFlight(?, ?, ?, ?)";
+	//SQLSTATE raised by the reserveSeat trigger when a flight is full
+	private static final String FLIGHT_FULL = "23514";
+	private static final String UNIQUE_VIOLATION = "23505";
+	//SQLSTATE when bookFlight is missing, i.e. the migration was not applied
+	private static final String UNDEFINED_FUNCTION = "42883";
+	//references tried before a booking gives up
+	private static final int MAX_REF_ATTEMPTS = 3;
+
+	/**
+	 * Outcome of a booking attempt.
+	 */
+	public enum Status {
+		BOOKED,
+		//no seat left on the flight for that date
+		FULL,
+		//the passenger already holds a seat on the flight that date
+		DUPLICATE,
+		//no flight with that number
+		UNKNOWN_FLIGHT,
+		//no passenger with that pID
+		UNKNOWN_PASSENGER,
+		//the bookRef is taken; retried here, never returned
+		REF_TAKEN
+	}
+
+	/**
+	 * Outcome of a booking attempt together with the Booking row as stored.
+	 */
+	public static final class Reservation {
+		public final Status status;
+		//the row returned by the insert, null unless BOOKED
+		public final QueryResult booking;
+
+		Reservation(Status status, QueryResult booking) {
+			this.status = status;
+			this.booking = booking;
+		}
+	}
+
+	private final AirBooking _esql;
+	private final ReentrantLock[] _stripes;
+	private final AtomicLong _booked = new AtomicLong();
+	private final AtomicLong _full = new AtomicLong();
+	private final AtomicLong _duplicates = new AtomicLong();
+	private final AtomicLong _unknown = new AtomicLong();
+	private final AtomicLong _refRetries = new AtomicLong();
+	//false once bookFlight turned out to be missing
+	private volatile boolean _bookFunction = true;
+
+	/**
+	 * @param esql the database bookings are written to; its pool runs them,
+	 *        its metrics and slow query log time them, its replica router is
+	 *        told about every booking so the booking thread reads its own
+	 *        writes, and a booking whose reference is taken gets another
+	 *        from its allocator
+	 * @param stripes number of in-process locks, rounded up to a power of two
+	 */
+	public SeatReservations(AirBooking esql, int stripes) {
+		this._esql = esql;
+		int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		this._stripes = new ReentrantLock[n];
+		for (int i = 0; i < n; i++) {
+			this._stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Method to book a seat. The booking is written in a single statement
+	 * so the seat count and the Booking row commit or fail together.
+	 *
+	 * @param bookRef the 10-character booking reference
+	 * @param flightNum the flight to book
+	 * @param departure the departure date
+	 * @param pID the passenger
+	 * @return BOOKED, or why no booking was made
+	 * @throws java.sql.SQLException on any other database error
+	 */
+	public Status book(String bookRef, String flightNum, Date departure, int pID) throws SQLException {
+		return reserve(bookRef, flightNum, departure, pID).status;
+	}
+
+	/**
+	 * Method to book a seat and get the Booking row back as stored. The
+	 * insert returns the row itself, so confirming a booking costs no
+	 * second query.
+	 *
+	 * @param bookRef the 10-character booking reference, replaced by a
+	 *        fresh one when taken
+	 * @param flightNum the flight to book
+	 * @param departure the departure date
+	 * @param pID the passenger
+	 * @return the status, with the booking as bookRef, departure, flightNum
+	 *         and pID when BOOKED
+	 * @throws java.sql.SQLException on any other database error
+	 */
+	public Reservation reserve(String bookRef, String flightNum, Date departure, int pID) throws SQLException {
+		ReentrantLock stripe = stripeFor(flightNum, departure);
+		stripe.lock();
+		try{
+			for (int attempt = 1; ; attempt++) {
+				long start = System.nanoTime();
+				int rowCount = -1;
+				try (PooledConnection conn = this._esql.getPool().borrow()) {
+					PreparedStatement stmt = conn.prepare(INSERT_BOOKING);
+					stmt.setString(1, bookRef);
+					stmt.setDate(2, departure);
+					stmt.setString(3, flightNum);
+					stmt.setInt(4, pID);
+					ResultSet rs = stmt.executeQuery();
+					QueryResult booking;
+					try{
+						booking = QueryResult.read(rs);
+					}finally{
+						rs.close();
+					}
+					rowCount = booking.getRowCount();
+					this._booked.incrementAndGet();
+					this._esql.getReplicas().wrote();
+					return new Reservation(Status.BOOKED, booking);
+				}catch (SQLException e){
+					if (FLIGHT_FULL.equals(e.getSQLState())) {
+						this._full.incrementAndGet();
+						return new Reservation(Status.FULL, null);
+					}
+					if (UNIQUE_VIOLATION.equals(e.getSQLState()) && !isRefTaken(e)) {
+						this._duplicates.incrementAndGet();
+						return new Reservation(Status.DUPLICATE, null);
+					}
+					if (!UNIQUE_VIOLATION.equals(e.getSQLState()) || attempt == MAX_REF_ATTEMPTS) {
+						throw e;
+					}
+				}finally{
+					this._esql.finish(INSERT_BOOKING, new Object[] { bookRef, departure, flightNum, pID }, start, rowCount, true);
+				}//end try
+				this._refRetries.incrementAndGet();
+				bookRef = this._esql.getBookRefs().next();
+			}
+		}finally{
+			stripe.unlock();
+		}
+	}
+
+	/**
+	 * Method to book a seat after checking that the flight and passenger
+	 * exist, all in one call to the bookFlight database function, so a
+	 * booking costs a single round trip whatever its outcome. Without that
+	 * function this falls back to reserve, where an unknown flight or
+	 * passenger fails the insert's foreign keys instead.
+	 *
+	 * @param bookRef the 10-character booking reference, replaced by a
+	 *        fresh one when taken
+	 * @param flightNum the flight to book
+	 * @param departure the departure date
+	 * @param pID the passenger
+	 * @return the status, with the booking as bookRef, departure, flightNum
+	 *         and pID when BOOKED
+	 * @throws java.sql.SQLException on any other database error
+	 */
+	public Reservation reserveChecked(String bookRef, String flightNum, Date departure, int pID) throws SQLException {
+		if (!this._bookFunction) {
+			return reserve(bookRef, flightNum, departure, pID);
+		}
+		ReentrantLock stripe = stripeFor(flightNum, departure);
+		stripe.lock();
+		try{
+			for (int attempt = 1; ; attempt++) {
+				long start = System.nanoTime();
+				int rowCount = -1;
+				try (PooledConnection conn = this._esql.getPool().borrow()) {
+					PreparedStatement stmt = conn.prepare(BOOK_FLIGHT);
+					stmt.setString(1, bookRef);
+					stmt.setString(2, flightNum);
+					stmt.setDate(3, departure);
+					stmt.setInt(4, pID);
+					ResultSet rs = stmt.executeQuery();
+					QueryResult r;
+					try{
+						r = QueryResult.read(rs);
+					}finally{
+						rs.close();
+					}
+					rowCount = r.getRowCount();
+					Status status = Status.valueOf(r.get(0, 0));
+					if (status == Status.BOOKED) {
+						this._booked.incrementAndGet();
+						this._esql.getReplicas().wrote();
+						List<List<String>> rows = new ArrayList<List<String>>(1);
+						rows.add(r.getRows().get(0).subList(1, r.getColumnCount()));
+						return new Reservation(status, new QueryResult(r.getColumnNames().subList(1, r.getColumnCount()), rows));
+					}
+					if (status != Status.REF_TAKEN) {
+						count(status);
+						return new Reservation(status, null);
+					}
+					if (attempt == MAX_REF_ATTEMPTS) {
+						throw new SQLException("Booking reference " + bookRef + " is taken, giving up after "
+							+ attempt + " references", UNIQUE_VIOLATION);
+					}
+				}catch (SQLException e){
+					if (!UNDEFINED_FUNCTION.equals(e.getSQLState())) {
+						throw e;
+					}
+					this._bookFunction = false;
+					break;
+				}finally{
+					this._esql.finish(BOOK_FLIGHT, new Object[] { bookRef, flightNum, departure, pID }, start, rowCount, true);
+				}//end try
+				this._refRetries.incrementAndGet();
+				bookRef = this._esql.getBookRefs().next();
+			}
+		}finally{
+			stripe.unlock();
+		}
+		return reserve(bookRef, flightNum, departure, pID);
+	}
+
+	/**
+	 * Tells a unique violation of the booking reference (the primary key of
+	 * Booking, of one of its partitions, or of BookingRef) from one of
+	 * UNIQUE(departure, flightNum, pID), i.e. a passenger booked twice.
+	 */
+	private static boolean isRefTaken(SQLException e) {
+		if (!(e instanceof PSQLException)) {
+			return false;
+		}
+		ServerErrorMessage m = ((PSQLException) e).getServerErrorMessage();
+		String constraint = m == null ? null : m.getConstraint();
+		return constraint != null && constraint.endsWith("_pkey");
+	}
+
+	private void count(Status status) {
+		if (status == Status.FULL) {
+			this._full.incrementAndGet();
+		}
+		else if (status == Status.DUPLICATE) {
+			this._duplicates.incrementAndGet();
+		}
+		else {
+			this._unknown.incrementAndGet();
+		}
+	}
+
+	private ReentrantLock stripeFor(String flightNum, Date departure) {
+		int h = flightNum.trim().hashCode() * 31 + departure.hashCode();
+		h ^= (h >>> 16);
+		return this._stripes[h & (this._stripes.length - 1)];
+	}
+
+	/**
+	 * Method to summarize booking outcomes so far.
+	 *
+	 * @return a one-line summary
+	 */
+	public String stats() {
+		return String.format("reservations[booked=%d full=%d duplicate=%d unknown=%d refRetries=%d stripes=%d]",
+			this._booked.get(), this._full.get(), this._duplicates.get(), this._unknown.get(), this._refRetries.get(),
+			this._stripes.length);
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class writes statements that ran longer than a threshold to a log
+ * file, with their bind values, time and row count, followed by the plan
+ * PostgreSQL chooses for them.
+ *
+ * The plan is collected by a single background thread on its own
+ * connection, outside the pool, so a slow statement never waits for it
+ * and never takes a connection from the application. Queries are run
+ * again under EXPLAIN (ANALYZE, BUFFERS) to show actual row counts, time
+ * and buffer hits per plan node. Writes (INSERT, UPDATE, DELETE, and a
+ * SELECT that calls a function which writes, such as bookFlight) are only
+ * EXPLAINed, since analyzing them would apply them a second time. The
+ * connection is read-only and every EXPLAIN is rolled back and bounded by
+ * a statement timeout. A statement text is explained at most once per
+ * interval, so a burst of slow calls costs one EXPLAIN.
+ *
+ * Slow statements arriving faster than they can be explained are dropped
+ * once the queue is full and counted in the log. The file is rotated to
+ * file.1, file.2, ... when it reaches its size limit.
+ *
+ */
+
+public class SlowQueryLog {
+	private static final int QUEUE_SIZE = 256;
+
+	private final String _url;
+	private final String _user;
+	private final String _passwd;
+	private final long _thresholdNanos;
+	private final long _explainIntervalMillis;
+	private final int _explainTimeoutMillis;
+	private final File _file;
+	private final long _maxBytes;
+	private final int _maxFiles;
+	private final ThreadPoolExecutor _worker;
+	private final AtomicLong _dropped = new AtomicLong();
+
+	//only used by the worker thread
+	private final Map<String, Long> _lastExplained = new HashMap<String, Long>();
+	private Connection _conn = null;
+	private Writer _out = null;
+	private long _written = 0;
+
+	/**
+	 * Creates the log; the file and the connection are opened when the
+	 * first slow statement arrives.
+	 *
+	 * @param url the JDBC connection URL
+	 * @param user the database user
+	 * @param passwd the database password
+	 * @param thresholdMillis statements taking at least this long are logged
+	 * @param file the log file
+	 * @param maxBytes size at which the file is rotated
+	 * @param maxFiles rotated files kept besides the current one
+	 * @param explainIntervalSeconds minimum time between two EXPLAINs of the same statement
+	 * @param explainTimeoutMillis statement timeout of each EXPLAIN
+	 */
+	public SlowQueryLog(String url, String user, String passwd, long thresholdMillis, File file,
+			long maxBytes, int maxFiles, long explainIntervalSeconds, int explainTimeoutMillis) {
+		this._url = url;
+		this._user = user;
+		this._passwd = passwd;
+		this._thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this._file = file;
+		this._maxBytes = maxBytes;
+		this._maxFiles = maxFiles;
+		this._explainIntervalMillis = TimeUnit.SECONDS.toMillis(explainIntervalSeconds);
+		this._explainTimeoutMillis = explainTimeoutMillis;
+		this._worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "slow-query-log");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	}
+
+	public long getThresholdNanos() {
+		return this._thresholdNanos;
+	}
+
+	/**
+	 * Method to log a statement if it was slow. Returns at once; the entry
+	 * is written and the plan collected in the background.
+	 *
+	 * @param sql the statement text
+	 * @param params the values bound to its placeholders
+	 * @param nanos how long the statement took
+	 * @param rows rows returned or affected, or a negative value when it failed
+	 */
+	public void offer(String sql, Object[] params, long nanos, long rows) {
+		offer(sql, params, nanos, rows, false);
+	}
+
+	/**
+	 * Method to log a statement if it was slow, as offer(sql, params, nanos,
+	 * rows) does.
+	 *
+	 * @param sql the statement text
+	 * @param params the values bound to its placeholders
+	 * @param nanos how long the statement took
+	 * @param rows rows returned or affected, or a negative value when it failed
+	 * @param write true when the statement writes even if it reads like a
+	 *        query, so its plan is collected without running it
+	 */
+	public void offer(final String sql, final Object[] params, final long nanos, final long rows, final boolean write) {
+		if (nanos < this._thresholdNanos) {
+			return;
+		}
+		final long at = System.currentTimeMillis();
+		try{
+			this._worker.execute(new Runnable() {
+				public void run() {
+					write(sql, params, nanos, rows, write, at);
+				}
+			});
+		}catch (RejectedExecutionException e){
+			this._dropped.incrementAndGet();
+		}//end try
+	}
+
+	private void write(String sql, Object[] params, long nanos, long rows, boolean write, long at) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new java.util.Date(at)));
+		sb.append(String.format(" slow statement %.3f ms, ", nanos / 1e6));
+		sb.append(rows < 0 ? "failed" : rows + " rows").append('\n');
+		long dropped = this._dropped.getAndSet(0);
+		if (dropped > 0) {
+			sb.append("  (").append(dropped).append(" slow statements before this one were not logged, the queue was full)\n");
+		}
+		sb.append("  sql: ").append(Metrics.normalize(sql)).append('\n');
+		if (params.length > 0) {
+			sb.append("  binds:");
+			for (int i = 0; i < params.length; i++) {
+				sb.append(i == 0 ? " " : ", ").append('$').append(i + 1).append('=');
+				appendValue(sb, params[i]);
+			}
+			sb.append('\n');
+		}
+		Long last = this._lastExplained.get(sql);
+		if (last != null && at - last < this._explainIntervalMillis) {
+			sb.append("  plan: explained ").append((at - last) / 1000).append(" s ago, see above\n");
+		}
+		else {
+			this._lastExplained.put(sql, at);
+			explain(sb, sql, params, write);
+		}
+		append(sb.append('\n').toString());
+	}
+
+	private static void appendValue(StringBuilder sb, Object v) {
+		if (v == null) {
+			sb.append("NULL");
+		}
+		else if (v instanceof Number || v instanceof Boolean) {
+			sb.append(v);
+		}
+		else {
+			sb.append('\'').append(String.valueOf(v).replace("'", "''")).append('\'');
+		}
+	}
+
+	/**
+	 * Appends the plan of a statement, or why it could not be collected.
+	 */
+	private void explain(StringBuilder sb, String sql, Object[] params, boolean write) {
+		String word = sql.trim().split("\\s+", 2)[0].toUpperCase();
+		boolean query = !write && (word.equals("SELECT") || word.equals("WITH") || word.equals("VALUES") || word.equals("TABLE"));
+		sb.append(query ? "  plan (EXPLAIN ANALYZE, BUFFERS):\n" : "  plan (EXPLAIN, not executed):\n");
+		try{
+			Connection c = connection();
+			try{
+				Statement st = c.createStatement();
+				try{
+					st.execute("SET LOCAL statement_timeout = " + this._explainTimeoutMillis);
+				}finally{
+					st.close();
+				}
+				PreparedStatement ps = c.prepareStatement((query ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql);
+				try{
+					AirBooking.bind(ps, params);
+					ResultSet rs = ps.executeQuery();
+					while (rs.next()) {
+						sb.append("    ").append(rs.getString(1)).append('\n');
+					}
+					rs.close();
+				}finally{
+					ps.close();
+				}
+			}finally{
+				c.rollback();
+			}
+		}catch (SQLException e){
+			sb.append("    not available: ").append(e.getMessage()).append('\n');
+			closeConnection();
+		}//end try
+	}
+
+	private Connection connection() throws SQLException {
+		if (this._conn == null || this._conn.isClosed()) {
+			Connection c = DriverManager.getConnection(this._url, this._user, this._passwd);
+			c.setAutoCommit(false);
+			c.setReadOnly(true);
+			this._conn = c;
+		}
+		return this._conn;
+	}
+
+	private void closeConnection() {
+		if (this._conn != null) {
+			try{
+				this._conn.close();
+			}catch (SQLException e){
+				// already broken
+			}//end try
+			this._conn = null;
+		}
+	}
+
+	/**
+	 * Appends an entry to the file, rotating it first when the entry would
+	 * take it past its size limit.
+	 */
+	private void append(String entry) {
+		byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+		try{
+			if (this._out != null && this._written > 0 && this._written + bytes.length > this._maxBytes) {
+				this._out.close();
+				this._out = null;
+				rotate();
+			}
+			if (this._out == null) {
+				this._out = new OutputStreamWriter(new FileOutputStream(this._file, true), StandardCharsets.UTF_8);
+				this._written = this._file.length();
+			}
+			this._out.write(entry);
+			this._out.flush();
+			this._written += bytes.length;
+		}catch (IOException e){
+			System.err.println("Could not write slow query log " + this._file + ": " + e.getMessage());
+		}//end try
+	}
+
+	private void rotate() {
+		String name = this._file.getPath();
+		new File(name + "." + this._maxFiles).delete();
+		for (int i = this._maxFiles - 1; i >= 1; i--) {
+			new File(name + "." + i).renameTo(new File(name + "." + (i + 1)));
+		}
+		if (this._maxFiles > 0) {
+			this._file.renameTo(new File(name + ".1"));
+		}
+		else {
+			this._file.delete();
+		}
+	}
+
+	/**
+	 * Method to write the entries still queued and close the file and the
+	 * connection.
+	 */
+	public void stop() {
+		this._worker.shutdown();
+		try{
+			this._worker.awaitTermination(10, TimeUnit.SECONDS);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}//end try
+		this._worker.shutdownNow();
+		closeConnection();
+		if (this._out != null) {
+			try{
+				this._out.close();
+			}catch (IOException e){
+				// nothing left to do
+			}//end try
+			this._out = null;
+		}
+	}
+}
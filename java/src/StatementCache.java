@@ -0,0 +1,99 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class defines a least-recently-used cache of prepared statements for
+ * one physical connection. Reusing the same PreparedStatement object lets
+ * the PostgreSQL driver switch to a named server-side statement once it has
+ * been executed prepareThreshold times, so the query is no longer parsed and
+ * planned on every call.
+ *
+ * A cache belongs to a single connection and is only used by whoever holds
+ * that connection, so it needs no locking of its own.
+ *
+ */
+
+public class StatementCache {
+	private final Connection _connection;
+	private final LinkedHashMap<String, PreparedStatement> _statements;
+	private long _hits = 0;
+	private long _misses = 0;
+
+	public StatementCache(Connection connection, final int maxSize) {
+		this._connection = connection;
+		this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > maxSize) {
+					close(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Method to get a prepared statement for the given SQL, preparing it on
+	 * first use. The statement stays owned by the cache and must not be
+	 * closed by the caller.
+	 *
+	 * @param sql the SQL text with ? placeholders
+	 * @return a prepared statement with its parameters cleared
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement stmt = this._statements.get(sql);
+		if (stmt != null && !stmt.isClosed()) {
+			_hits++;
+			stmt.clearParameters();
+			return stmt;
+		}
+		_misses++;
+		stmt = this._connection.prepareStatement(sql);
+		this._statements.put(sql, stmt);
+		return stmt;
+	}
+
+	public long getHits() {
+		return _hits;
+	}
+
+	public long getMisses() {
+		return _misses;
+	}
+
+	/**
+	 * Method to close every cached statement.
+	 */
+	public void clear() {
+		for (PreparedStatement stmt : this._statements.values()) {
+			close(stmt);
+		}
+		this._statements.clear();
+	}
+
+	private static void close(PreparedStatement stmt) {
+		try{
+			stmt.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+}
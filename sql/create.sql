@@ -4,6 +4,12 @@ DROP TABLE IF EXISTS Passenger CASCADE;
 DROP TABLE IF EXISTS Flight CASCADE;
 DROP TABLE IF EXISTS Ratings CASCADE;
 DROP TABLE IF EXISTS Booking CASCADE;
+DROP TABLE IF EXISTS SeatInventory CASCADE;
+DROP TABLE IF EXISTS RatingSummary CASCADE;
+--made by sql/migrations/003_partition_booking.sql
+DROP TABLE IF EXISTS BookingRef CASCADE;
+--a new database starts at version 0 of sql/migrations
+DROP TABLE IF EXISTS SchemaVersion CASCADE;
 
 DROP DOMAIN IF EXISTS _YEAR CASCADE;
 DROP DOMAIN IF EXISTS _HOURS CASCADE;
@@ -12,11 +18,17 @@ DROP DOMAIN IF EXISTS _SCORE CASCADE;
 
 DROP FUNCTION IF EXISTS generatePID();
 DROP FUNCTION IF EXISTS generateRID();
+DROP FUNCTION IF EXISTS reserveSeat();
+DROP FUNCTION IF EXISTS releaseSeat();
+DROP FUNCTION IF EXISTS summarizeRating();
+DROP FUNCTION IF EXISTS claimBookingRef();
 DROP SEQUENCE IF EXISTS passengerSeq;
 DROP SEQUENCE IF EXISTS ratingsSeq;
+DROP SEQUENCE IF EXISTS bookRefBlockSeq;
 
 DROP INDEX IF EXISTS indexPID;
 DROP INDEX IF EXISTS indexFlightNum;
+DROP INDEX IF EXISTS indexAvgScore;
 
 -- CREATE DOMAINS
 CREATE DOMAIN _YEAR AS int4 CHECK(VALUE >= 1900);--YEAR ONLY GREATER THAN 1900
@@ -78,6 +90,30 @@ CREATE TABLE Booking(
 	UNIQUE(departure,flightNum,pID)
 );
 
+--Seats booked per flight and departure date, kept in step with Booking by
+--the reserveSeat/releaseSeat triggers. The conditional increment on this
+--row is what stops concurrent sessions from overbooking a flight.
+CREATE TABLE SeatInventory(
+	flightNum CHAR(8) NOT NULL,
+	departure DATE NOT NULL,
+	booked INTEGER NOT NULL DEFAULT 0 CHECK(booked >= 0),
+	PRIMARY KEY(flightNum,departure),
+	FOREIGN KEY (flightNum) REFERENCES Flight(flightNum)
+);
+
+--Running score total and count per flight, kept in step with Ratings by the
+--summarizeRating trigger. avgScore is computed the way AVG(score) is, so the
+--highest rated routes are read from indexAvgScore instead of aggregating
+--every rating.
+CREATE TABLE RatingSummary(
+	flightNum CHAR(8) NOT NULL,
+	scoreSum BIGINT NOT NULL,
+	scoreCount BIGINT NOT NULL CHECK(scoreCount > 0),
+	avgScore NUMERIC NOT NULL,
+	PRIMARY KEY(flightNum),
+	FOREIGN KEY (flightNum) REFERENCES Flight(flightNum)
+);
+
 --CREATE USER WITH PASSWORD TO CONNECT TO DATABASE--CHANGE username accordingly
 DROP USER IF EXISTS username;
 CREATE USER username WITH PASSWORD '';
@@ -87,6 +123,8 @@ GRANT ALL PRIVILEGES ON TABLE Passenger TO username;
 GRANT ALL PRIVILEGES ON TABLE Flight TO username;
 GRANT ALL PRIVILEGES ON TABLE Ratings TO username;
 GRANT ALL PRIVILEGES ON TABLE Booking TO username;
+GRANT ALL PRIVILEGES ON TABLE SeatInventory TO username;
+GRANT ALL PRIVILEGES ON TABLE RatingSummary TO username;
 ------------------------------------------------------------------------------------
 
 COPY Airline (
@@ -140,9 +178,21 @@ FROM 'bookings.csv'
 WITH DELIMITER ',';
 --SELECT * FROM Booking;
 
+INSERT INTO SeatInventory (flightNum, departure, booked)
+SELECT flightNum, departure, COUNT(*)
+FROM Booking
+GROUP BY flightNum, departure;
+
+INSERT INTO RatingSummary (flightNum, scoreSum, scoreCount, avgScore)
+SELECT flightNum, SUM(score), COUNT(*), AVG(score)
+FROM Ratings
+GROUP BY flightNum;
+
 
 CREATE SEQUENCE passengerSeq START WITH 250;
 CREATE SEQUENCE ratingsSeq START WITH 433;
+--Blocks of booking references reserved by BookRefAllocator, 1000 per block
+CREATE SEQUENCE bookRefBlockSeq START WITH 0 MINVALUE 0;
 
 CREATE OR REPLACE FUNCTION generatePID()
 	RETURNS trigger AS
@@ -176,6 +226,96 @@ CREATE TRIGGER insertRating
 	FOR EACH ROW
 	EXECUTE PROCEDURE generateRID();
 
+--Takes a seat for the new booking, failing with check_violation when the
+--flight is already full on that date. The UPDATE locks the inventory row,
+--so concurrent bookings of the same flight and date are serialized here.
+CREATE OR REPLACE FUNCTION reserveSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NEW;
+		END IF;
+		INSERT INTO SeatInventory (flightNum, departure, booked)
+		VALUES (NEW.flightNum, NEW.departure, 0)
+		ON CONFLICT DO NOTHING;
+		UPDATE SeatInventory I
+		SET booked = I.booked + 1
+		FROM Flight F
+		WHERE I.flightNum = NEW.flightNum AND I.departure = NEW.departure
+		AND F.flightNum = I.flightNum AND I.booked < F.seats;
+		IF NOT FOUND THEN
+			RAISE EXCEPTION 'Flight % is full on %', trim(NEW.flightNum), NEW.departure
+				USING ERRCODE = 'check_violation';
+		END IF;
+		RETURN NEW;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+--Gives the seat of a deleted or moved booking back.
+CREATE OR REPLACE FUNCTION releaseSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NULL;
+		END IF;
+		UPDATE SeatInventory
+		SET booked = booked - 1
+		WHERE flightNum = OLD.flightNum AND departure = OLD.departure;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+CREATE TRIGGER reserveBookingSeat
+	BEFORE INSERT OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE reserveSeat();
+
+CREATE TRIGGER releaseBookingSeat
+	AFTER DELETE OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE releaseSeat();
+
+--Applies a new, changed or deleted rating to the flight's RatingSummary row.
+--A flight whose last rating is removed loses its row, as it drops out of
+--the AVG(score) grouping.
+CREATE OR REPLACE FUNCTION summarizeRating()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP IN ('UPDATE', 'DELETE') THEN
+			--the last rating removes the row; a count of 0 would fail its CHECK
+			DELETE FROM RatingSummary WHERE flightNum = OLD.flightNum AND scoreCount = 1;
+			UPDATE RatingSummary
+			SET scoreSum = scoreSum - OLD.score,
+				scoreCount = scoreCount - 1,
+				avgScore = (scoreSum - OLD.score)::numeric / (scoreCount - 1)
+			WHERE flightNum = OLD.flightNum AND scoreCount > 1;
+		END IF;
+		IF TG_OP IN ('INSERT', 'UPDATE') THEN
+			INSERT INTO RatingSummary AS S (flightNum, scoreSum, scoreCount, avgScore)
+			VALUES (NEW.flightNum, NEW.score, 1, NEW.score::numeric)
+			ON CONFLICT (flightNum) DO UPDATE
+			SET scoreSum = S.scoreSum + EXCLUDED.scoreSum,
+				scoreCount = S.scoreCount + 1,
+				avgScore = (S.scoreSum + EXCLUDED.scoreSum)::numeric / (S.scoreCount + 1);
+		END IF;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+CREATE TRIGGER summarizeRatings
+	AFTER INSERT OR DELETE OR UPDATE OF flightNum, score
+	ON Ratings
+	FOR EACH ROW
+	EXECUTE PROCEDURE summarizeRating();
+
 CREATE INDEX indexPID
 ON Passenger
 USING BTREE (pID);
@@ -183,3 +323,7 @@ USING BTREE (pID);
 CREATE INDEX indexFlightNum
 ON Flight
 USING BTREE (flightNum);
+
+CREATE INDEX indexAvgScore
+ON RatingSummary
+USING BTREE (avgScore DESC);
@@ -0,0 +1,41 @@
+--Indexes for the predicates the application filters on, replacing the two
+--indexes of create.sql that duplicated the primary keys of Passenger and
+--Flight.
+DROP INDEX IF EXISTS indexPID;
+DROP INDEX IF EXISTS indexFlightNum;
+
+--Options 4 and 7 (flights between two cities, longest first). The key holds
+--every column both queries read, so they are answered by an index-only scan
+--already ordered by duration.
+CREATE INDEX IF NOT EXISTS indexFlightRoute
+ON Flight
+USING BTREE (origin, destination, duration DESC, flightNum, plane, airId);
+
+--Option 5 (flights per destination) counts each destination in index order.
+CREATE INDEX IF NOT EXISTS indexFlightDestination
+ON Flight
+USING BTREE (destination);
+
+--Option 3 checks that the passenger booked the flight. Also serves the
+--foreign key from Passenger when a passenger is deleted.
+CREATE INDEX IF NOT EXISTS indexBookingPassenger
+ON Booking
+USING BTREE (pID, flightNum);
+
+--Bookings of one flight. UNIQUE(departure, flightNum, pID) needs the date,
+--so without this index deleting or renumbering a flight reads every booking
+--to check the foreign key.
+CREATE INDEX IF NOT EXISTS indexBookingFlight
+ON Booking
+USING BTREE (flightNum, departure);
+
+--Option 3 checks that the passenger has not reviewed the flight already.
+--Not unique: the loaded ratings contain repeated reviews.
+CREATE INDEX IF NOT EXISTS indexRatingsPassenger
+ON Ratings
+USING BTREE (pID, flightNum);
+
+--Ratings of one flight, for the foreign key from Flight.
+CREATE INDEX IF NOT EXISTS indexRatingsFlight
+ON Ratings
+USING BTREE (flightNum);
@@ -0,0 +1,162 @@
+--Brings a database created from the original create.sql up to the objects
+--the application needs besides indexes: SeatInventory with the
+--reserveSeat/releaseSeat triggers that enforce flight capacity,
+--RatingSummary with the summarizeRating trigger behind option 6, and
+--bookRefBlockSeq, which BookRefAllocator reserves booking references from.
+--The current create.sql already makes all of them, so every statement here
+--leaves such a database as it is.
+
+CREATE TABLE IF NOT EXISTS SeatInventory(
+	flightNum CHAR(8) NOT NULL,
+	departure DATE NOT NULL,
+	booked INTEGER NOT NULL DEFAULT 0 CHECK(booked >= 0),
+	PRIMARY KEY(flightNum,departure),
+	FOREIGN KEY (flightNum) REFERENCES Flight(flightNum)
+);
+
+CREATE TABLE IF NOT EXISTS RatingSummary(
+	flightNum CHAR(8) NOT NULL,
+	scoreSum BIGINT NOT NULL,
+	scoreCount BIGINT NOT NULL CHECK(scoreCount > 0),
+	avgScore NUMERIC NOT NULL,
+	PRIMARY KEY(flightNum),
+	FOREIGN KEY (flightNum) REFERENCES Flight(flightNum)
+);
+
+CREATE INDEX IF NOT EXISTS indexAvgScore
+ON RatingSummary
+USING BTREE (avgScore DESC);
+
+--Whoever could use Booking and Ratings can use their counters.
+DO $$
+DECLARE
+	r RECORD;
+BEGIN
+	FOR r IN
+		SELECT DISTINCT grantee FROM information_schema.role_table_grants
+		WHERE table_name = 'booking' AND grantee NOT IN ('PUBLIC', current_user)
+	LOOP
+		EXECUTE format('GRANT ALL PRIVILEGES ON TABLE SeatInventory TO %I', r.grantee);
+	END LOOP;
+	FOR r IN
+		SELECT DISTINCT grantee FROM information_schema.role_table_grants
+		WHERE table_name = 'ratings' AND grantee NOT IN ('PUBLIC', current_user)
+	LOOP
+		EXECUTE format('GRANT ALL PRIVILEGES ON TABLE RatingSummary TO %I', r.grantee);
+	END LOOP;
+END
+$$;
+
+--Seat counts and rating totals of the rows already there. Rows that exist
+--are kept; on a database from the current create.sql that is all of them.
+--The tables are locked first so no booking or rating slips in between the
+--counts and the triggers below.
+LOCK TABLE Booking, Ratings IN SHARE ROW EXCLUSIVE MODE;
+
+INSERT INTO SeatInventory (flightNum, departure, booked)
+SELECT flightNum, departure, COUNT(*)
+FROM Booking
+GROUP BY flightNum, departure
+ON CONFLICT DO NOTHING;
+
+INSERT INTO RatingSummary (flightNum, scoreSum, scoreCount, avgScore)
+SELECT flightNum, SUM(score), COUNT(*), AVG(score)
+FROM Ratings
+GROUP BY flightNum
+ON CONFLICT DO NOTHING;
+
+--Blocks of booking references reserved by BookRefAllocator, 1000 per block
+CREATE SEQUENCE IF NOT EXISTS bookRefBlockSeq START WITH 0 MINVALUE 0;
+
+--Takes a seat for the new booking, failing with check_violation when the
+--flight is already full on that date. The UPDATE locks the inventory row,
+--so concurrent bookings of the same flight and date are serialized here.
+CREATE OR REPLACE FUNCTION reserveSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NEW;
+		END IF;
+		INSERT INTO SeatInventory (flightNum, departure, booked)
+		VALUES (NEW.flightNum, NEW.departure, 0)
+		ON CONFLICT DO NOTHING;
+		UPDATE SeatInventory I
+		SET booked = I.booked + 1
+		FROM Flight F
+		WHERE I.flightNum = NEW.flightNum AND I.departure = NEW.departure
+		AND F.flightNum = I.flightNum AND I.booked < F.seats;
+		IF NOT FOUND THEN
+			RAISE EXCEPTION 'Flight % is full on %', trim(NEW.flightNum), NEW.departure
+				USING ERRCODE = 'check_violation';
+		END IF;
+		RETURN NEW;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+--Gives the seat of a deleted or moved booking back.
+CREATE OR REPLACE FUNCTION releaseSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NULL;
+		END IF;
+		UPDATE SeatInventory
+		SET booked = booked - 1
+		WHERE flightNum = OLD.flightNum AND departure = OLD.departure;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+DROP TRIGGER IF EXISTS reserveBookingSeat ON Booking;
+CREATE TRIGGER reserveBookingSeat
+	BEFORE INSERT OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE reserveSeat();
+
+DROP TRIGGER IF EXISTS releaseBookingSeat ON Booking;
+CREATE TRIGGER releaseBookingSeat
+	AFTER DELETE OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE releaseSeat();
+
+--Applies a new, changed or deleted rating to the flight's RatingSummary row.
+--A flight whose last rating is removed loses its row, as it drops out of
+--the AVG(score) grouping.
+CREATE OR REPLACE FUNCTION summarizeRating()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF TG_OP IN ('UPDATE', 'DELETE') THEN
+			--the last rating removes the row; a count of 0 would fail its CHECK
+			DELETE FROM RatingSummary WHERE flightNum = OLD.flightNum AND scoreCount = 1;
+			UPDATE RatingSummary
+			SET scoreSum = scoreSum - OLD.score,
+				scoreCount = scoreCount - 1,
+				avgScore = (scoreSum - OLD.score)::numeric / (scoreCount - 1)
+			WHERE flightNum = OLD.flightNum AND scoreCount > 1;
+		END IF;
+		IF TG_OP IN ('INSERT', 'UPDATE') THEN
+			INSERT INTO RatingSummary AS S (flightNum, scoreSum, scoreCount, avgScore)
+			VALUES (NEW.flightNum, NEW.score, 1, NEW.score::numeric)
+			ON CONFLICT (flightNum) DO UPDATE
+			SET scoreSum = S.scoreSum + EXCLUDED.scoreSum,
+				scoreCount = S.scoreCount + 1,
+				avgScore = (S.scoreSum + EXCLUDED.scoreSum)::numeric / (S.scoreCount + 1);
+		END IF;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+DROP TRIGGER IF EXISTS summarizeRatings ON Ratings;
+CREATE TRIGGER summarizeRatings
+	AFTER INSERT OR DELETE OR UPDATE OF flightNum, score
+	ON Ratings
+	FOR EACH ROW
+	EXECUTE PROCEDURE summarizeRating();
@@ -0,0 +1,250 @@
+--Booking partitioned by departure month. Each month is its own table
+--booking_YYYY_MM, so a lookup by flight and departure date reads one
+--partition's indexes, inserts only maintain the current month's indexes,
+--and old months are detached whole instead of being deleted row by row.
+--Departures without a monthly partition go to booking_default.
+--
+--A primary key on a partitioned table must contain the partition key, so
+--it becomes (bookRef, departure), which alone would let one reference be
+--stored again for another month. BookingRef holds every reference once and
+--is kept in step with Booking by the claimBookingRef trigger, so reusing a
+--reference fails with unique_violation on bookingref_pkey as before.
+--
+--Needs PostgreSQL 11 or later.
+DO $$
+BEGIN
+	IF current_setting('server_version_num')::int < 110000 THEN
+		RAISE EXCEPTION 'Partitioning Booking needs PostgreSQL 11 or later';
+	END IF;
+END
+$$;
+
+ALTER TABLE Booking RENAME TO BookingUnpartitioned;
+ALTER TABLE BookingUnpartitioned DROP CONSTRAINT IF EXISTS booking_pkey;
+ALTER TABLE BookingUnpartitioned DROP CONSTRAINT IF EXISTS booking_departure_flightnum_pid_key;
+DROP INDEX IF EXISTS indexBookingPassenger;
+DROP INDEX IF EXISTS indexBookingFlight;
+
+CREATE TABLE Booking(
+	bookRef CHAR(10) NOT NULL,
+	departure DATE NOT NULL,
+	flightNum CHAR(8) NOT NULL,
+	pID INTEGER NOT NULL,
+	PRIMARY KEY(bookRef,departure),
+	FOREIGN KEY (flightNum) REFERENCES Flight(flightNum),
+	FOREIGN KEY (pID) REFERENCES Passenger(pID),
+	UNIQUE(departure,flightNum,pID)
+) PARTITION BY RANGE (departure);
+
+CREATE TABLE booking_default PARTITION OF Booking DEFAULT;
+
+--Every booking reference, across all months.
+CREATE TABLE BookingRef(
+	bookRef CHAR(10) NOT NULL,
+	PRIMARY KEY(bookRef)
+);
+
+CREATE INDEX indexBookingPassenger
+ON Booking
+USING BTREE (pID, flightNum);
+
+CREATE INDEX indexBookingFlight
+ON Booking
+USING BTREE (flightNum, departure);
+
+--Whoever could use the old table can use the new one.
+DO $$
+DECLARE
+	r RECORD;
+BEGIN
+	FOR r IN
+		SELECT DISTINCT grantee FROM information_schema.role_table_grants
+		WHERE table_name = 'bookingunpartitioned' AND grantee NOT IN ('PUBLIC', current_user)
+	LOOP
+		EXECUTE format('GRANT ALL PRIVILEGES ON TABLE Booking TO %I', r.grantee);
+		EXECUTE format('GRANT ALL PRIVILEGES ON TABLE BookingRef TO %I', r.grantee);
+	END LOOP;
+END
+$$;
+
+--Seat counts follow Booking through AFTER row triggers. BEFORE row triggers
+--on a partitioned table need PostgreSQL 13, and an UPDATE that moves a
+--booking to another month runs as a DELETE and an INSERT, which these
+--triggers count correctly. A full flight still fails the INSERT with
+--check_violation. Rows moved between partitions by createBookingPartitions
+--keep their seats: it sets airbooking.movingBookings for that transaction.
+CREATE OR REPLACE FUNCTION reserveSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF current_setting('airbooking.movingBookings', true) = 'on' THEN
+			RETURN NULL;
+		END IF;
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NULL;
+		END IF;
+		INSERT INTO SeatInventory (flightNum, departure, booked)
+		VALUES (NEW.flightNum, NEW.departure, 0)
+		ON CONFLICT DO NOTHING;
+		UPDATE SeatInventory I
+		SET booked = I.booked + 1
+		FROM Flight F
+		WHERE I.flightNum = NEW.flightNum AND I.departure = NEW.departure
+		AND F.flightNum = I.flightNum AND I.booked < F.seats;
+		IF NOT FOUND THEN
+			RAISE EXCEPTION 'Flight % is full on %', trim(NEW.flightNum), NEW.departure
+				USING ERRCODE = 'check_violation';
+		END IF;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+CREATE OR REPLACE FUNCTION releaseSeat()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF current_setting('airbooking.movingBookings', true) = 'on' THEN
+			RETURN NULL;
+		END IF;
+		IF TG_OP = 'UPDATE' AND NEW.flightNum = OLD.flightNum AND NEW.departure = OLD.departure THEN
+			RETURN NULL;
+		END IF;
+		UPDATE SeatInventory
+		SET booked = booked - 1
+		WHERE flightNum = OLD.flightNum AND departure = OLD.departure;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+--releaseBookingSeat fires before reserveBookingSeat (triggers fire in name
+--order), so a booking moved to a full flight gives its old seat back first.
+CREATE TRIGGER reserveBookingSeat
+	AFTER INSERT OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE reserveSeat();
+
+CREATE TRIGGER releaseBookingSeat
+	AFTER DELETE OR UPDATE OF flightNum, departure
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE releaseSeat();
+
+--Claims the reference of a new booking in BookingRef and gives back that of
+--a deleted one. A booking moved to another month runs as a DELETE and an
+--INSERT, so it gives its reference back and claims it again. References of
+--archived months stay claimed, so they are never handed out twice.
+CREATE OR REPLACE FUNCTION claimBookingRef()
+	RETURNS trigger AS
+	$BODY$
+	BEGIN
+		IF current_setting('airbooking.movingBookings', true) = 'on' THEN
+			RETURN NULL;
+		END IF;
+		IF TG_OP IN ('UPDATE', 'DELETE') THEN
+			DELETE FROM BookingRef WHERE bookRef = OLD.bookRef;
+		END IF;
+		IF TG_OP IN ('INSERT', 'UPDATE') THEN
+			INSERT INTO BookingRef (bookRef) VALUES (NEW.bookRef);
+		END IF;
+		RETURN NULL;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+CREATE TRIGGER claimBookingRef
+	AFTER INSERT OR DELETE OR UPDATE OF bookRef
+	ON Booking
+	FOR EACH ROW
+	EXECUTE PROCEDURE claimBookingRef();
+
+--Creates the monthly partitions of Booking from the month of first through
+--the month of last. Bookings of those months already in booking_default are
+--moved into the new partition. Returns the number of partitions created.
+CREATE OR REPLACE FUNCTION createBookingPartitions(first DATE, last DATE)
+	RETURNS integer AS
+	$BODY$
+	DECLARE
+		m DATE := date_trunc('month', first)::date;
+		n DATE;
+		part TEXT;
+		created INTEGER := 0;
+	BEGIN
+		--one caller at a time, so two processes never create the same month
+		PERFORM pg_advisory_xact_lock(hashtext('createBookingPartitions'));
+		WHILE m <= last LOOP
+			n := (m + interval '1 month')::date;
+			part := 'booking_' || to_char(m, 'YYYY_MM');
+			IF to_regclass(part) IS NULL THEN
+				IF EXISTS (SELECT 1 FROM booking_default WHERE departure >= m AND departure < n) THEN
+					PERFORM set_config('airbooking.movingBookings', 'on', true);
+					EXECUTE format('CREATE TEMP TABLE bookingMoved AS SELECT * FROM booking_default '
+						|| 'WHERE departure >= %L AND departure < %L', m, n);
+					DELETE FROM booking_default WHERE departure >= m AND departure < n;
+					EXECUTE format('CREATE TABLE %I PARTITION OF Booking FOR VALUES FROM (%L) TO (%L)', part, m, n);
+					INSERT INTO Booking SELECT * FROM bookingMoved;
+					DROP TABLE bookingMoved;
+					PERFORM set_config('airbooking.movingBookings', 'off', true);
+				ELSE
+					EXECUTE format('CREATE TABLE %I PARTITION OF Booking FOR VALUES FROM (%L) TO (%L)', part, m, n);
+				END IF;
+				created := created + 1;
+			END IF;
+			m := n;
+		END LOOP;
+		RETURN created;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+--Detaches every monthly partition of Booking that ends on or before the
+--given date and moves it to the archive schema, where it can be dumped and
+--dropped. The seat counts of those months are removed from SeatInventory,
+--so reconcile-seats does not report them. Returns the number of partitions
+--archived.
+CREATE SCHEMA IF NOT EXISTS archive;
+
+CREATE OR REPLACE FUNCTION archiveBookingPartitions(before DATE)
+	RETURNS integer AS
+	$BODY$
+	DECLARE
+		p RECORD;
+		archived INTEGER := 0;
+	BEGIN
+		FOR p IN
+			SELECT C.relname AS part, to_date(substr(C.relname, 9), 'YYYY_MM') AS m
+			FROM pg_inherits I JOIN pg_class C ON C.oid = I.inhrelid
+			WHERE I.inhparent = 'booking'::regclass AND C.relname ~ '^booking_[0-9]{4}_[0-9]{2}$'
+			ORDER BY C.relname
+		LOOP
+			CONTINUE WHEN (p.m + interval '1 month')::date > before;
+			EXECUTE format('ALTER TABLE Booking DETACH PARTITION %I', p.part);
+			EXECUTE format('ALTER TABLE %I SET SCHEMA archive', p.part);
+			DELETE FROM SeatInventory WHERE departure >= p.m AND departure < (p.m + interval '1 month')::date;
+			archived := archived + 1;
+		END LOOP;
+		RETURN archived;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';
+
+--A partition for every month from the first booking through three months
+--from now. Later departures wait in booking_default until the application
+--creates their month (see BookingPartitions).
+SELECT createBookingPartitions(
+	LEAST((SELECT MIN(departure) FROM BookingUnpartitioned), current_date),
+	(current_date + interval '3 months')::date);
+
+--The existing bookings already hold their seats. Their references are
+--unique under the old primary key.
+INSERT INTO BookingRef (bookRef)
+SELECT bookRef FROM BookingUnpartitioned;
+
+SELECT set_config('airbooking.movingBookings', 'on', true);
+INSERT INTO Booking (bookRef, departure, flightNum, pID)
+SELECT bookRef, departure, flightNum, pID FROM BookingUnpartitioned;
+SELECT set_config('airbooking.movingBookings', 'off', true);
+
+DROP TABLE BookingUnpartitioned;
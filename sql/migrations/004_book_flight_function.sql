@@ -0,0 +1,63 @@
+--Books a seat in one call: checks that the flight and passenger exist and
+--that a seat is left, then inserts the booking, all in the caller's
+--transaction. Returns one row with a status and, when BOOKED, the booking
+--as stored. The status is one of
+--  BOOKED             the booking was made
+--  UNKNOWN_FLIGHT     no flight with that number
+--  UNKNOWN_PASSENGER  no passenger with that pID
+--  FULL               no seat left on the flight for that date
+--  DUPLICATE          the passenger is already booked on the flight for
+--                     that date
+--  REF_TAKEN          the reference is taken by another booking; the
+--                     caller retries with a fresh one
+--The reference is allocated by the caller from bookRefBlockSeq (see
+--BookRefAllocator), which costs no round trip per booking. The seat count
+--check here only answers sold-out flights early; the reserveSeat trigger
+--still takes the seat under the SeatInventory row lock, so concurrent
+--callers cannot overbook.
+CREATE OR REPLACE FUNCTION bookFlight(ref CHAR(10), flight CHAR(8), day DATE, passenger INTEGER)
+	RETURNS TABLE(status TEXT, bookRef CHAR(10), departure DATE, flightNum CHAR(8), pID INTEGER) AS
+	$BODY$
+	#variable_conflict use_column
+	DECLARE
+		capacity INTEGER;
+		violated TEXT;
+	BEGIN
+		SELECT F.seats INTO capacity FROM Flight F WHERE F.flightNum = flight;
+		IF NOT FOUND THEN
+			status := 'UNKNOWN_FLIGHT';
+			RETURN NEXT;
+			RETURN;
+		END IF;
+		PERFORM 1 FROM Passenger P WHERE P.pID = passenger;
+		IF NOT FOUND THEN
+			status := 'UNKNOWN_PASSENGER';
+			RETURN NEXT;
+			RETURN;
+		END IF;
+		PERFORM 1 FROM SeatInventory I
+		WHERE I.flightNum = flight AND I.departure = day AND I.booked >= capacity;
+		IF FOUND THEN
+			status := 'FULL';
+			RETURN NEXT;
+			RETURN;
+		END IF;
+		BEGIN
+			INSERT INTO Booking AS B (bookRef, departure, flightNum, pID)
+			VALUES (ref, day, flight, passenger)
+			RETURNING B.bookRef, B.departure, B.flightNum, B.pID
+			INTO bookRef, departure, flightNum, pID;
+			status := 'BOOKED';
+		EXCEPTION
+			WHEN check_violation THEN
+				status := 'FULL';
+			WHEN unique_violation THEN
+				--the reference is the primary key of Booking, of its
+				--partitions and of BookingRef
+				GET STACKED DIAGNOSTICS violated = CONSTRAINT_NAME;
+				status := CASE WHEN right(violated, 5) = '_pkey' THEN 'REF_TAKEN' ELSE 'DUPLICATE' END;
+		END;
+		RETURN NEXT;
+	END
+	$BODY$
+LANGUAGE 'plpgsql';